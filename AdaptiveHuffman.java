@@ -0,0 +1,273 @@
+package huffman_coding;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Adaptive Huffman coding with the FGK algorithm. The encoder and the decoder start with the same
+ * trie that only contains the NYT (not yet transmitted) node, and both update the trie after each
+ * byte, so the trie never has to be written and the input is only read once.
+ * <p>
+ * A new byte is written as the path to the NYT node followed by the 8 bits of the byte. After each
+ * byte the weights on the path from its leaf to the root are incremented, and before a node is
+ * incremented it is swapped with the highest numbered node of the same weight, which keeps the
+ * sibling property of the trie.
+ * <p>
+ * The stream is written in frames so the output can be read while the input is still coming: each
+ * frame is the number of bytes in it as a varint followed by the codes of the bytes, padded to a
+ * whole byte. A frame with 0 bytes ends the stream. The trie is not reset between the frames.
+ *
+ * @author Gustaf Rydholm
+ * @author Addi Djikic
+ *         CELTE13
+ *         DD1332
+ *         2016-02-25
+ */
+class AdaptiveHuffman {
+    private static final int maxByte = 256;             //Maximum size of a byte.
+    private static final int NODES = 2 * maxByte + 1;   //Number of nodes in a full trie with the NYT node.
+    private static final int ROOT = NODES - 1;          //The root has the highest number.
+    static final int FRAME_SIZE = 1 << 16;              //Maximum number of bytes in a frame.
+
+    //The nodes are stored by their number, the fields of a node move when it is swapped.
+    private final int[] weight = new int[NODES];
+    private final int[] parent = new int[NODES];
+    private final int[] left = new int[NODES];          //Left child, or -1 for a leaf.
+    private final int[] right = new int[NODES];         //Right child, or -1 for a leaf.
+    private final int[] symbol = new int[NODES];        //The byte of a leaf, -1 for the NYT node and branch nodes.
+    private final int[] leaf = new int[maxByte];        //The number of the leaf of each byte, -1 if not yet seen.
+    private int nyt = ROOT;                             //The number of the NYT node.
+
+    private final int[] path = new int[NODES];          //The bits of a path, from the leaf to the root.
+
+    AdaptiveHuffman() {
+        Arrays.fill(leaf, -1);
+        left[ROOT] = right[ROOT] = -1;
+        symbol[ROOT] = -1;
+        parent[ROOT] = -1;
+    }
+
+    /**
+     * ----------------------------------------------------
+     *
+     *               Methods for updating the trie.
+     *
+     * ----------------------------------------------------
+     */
+
+    /**
+     * Updates the trie after a byte has been coded.
+     *
+     * @param b the byte.
+     */
+    private void update(int b) {
+        int node = leaf[b];
+        if (node < 0) {
+            //The NYT node gets two children: a new NYT node to the left and the leaf of the byte to the right.
+            int old = nyt;
+            nyt = old - 2;
+            node = old - 1;
+            left[old] = nyt;
+            right[old] = node;
+            initLeaf(nyt, -1, old);
+            initLeaf(node, b, old);
+            leaf[b] = node;
+        }
+        while (node != ROOT) {
+            int leader = node;
+            while (leader + 1 < ROOT && weight[leader + 1] == weight[node]) leader++;
+            if (leader != node && leader != parent[node]) {
+                swap(node, leader);
+                node = leader;
+            }
+            weight[node]++;
+            node = parent[node];
+        }
+        weight[ROOT]++;
+    }
+
+    private void initLeaf(int node, int b, int parentNode) {
+        weight[node] = 0;
+        left[node] = right[node] = -1;
+        symbol[node] = b;
+        parent[node] = parentNode;
+    }
+
+    /**
+     * Swaps the subtrees at two numbers. The parents stay at their numbers, so only the children
+     * and the leaf of the bytes have to be updated.
+     */
+    private void swap(int i, int j) {
+        int t;
+        t = weight[i]; weight[i] = weight[j]; weight[j] = t;
+        t = left[i]; left[i] = left[j]; left[j] = t;
+        t = right[i]; right[i] = right[j]; right[j] = t;
+        t = symbol[i]; symbol[i] = symbol[j]; symbol[j] = t;
+        relink(i);
+        relink(j);
+    }
+
+    private void relink(int node) {
+        if (left[node] >= 0) {
+            parent[left[node]] = node;
+            parent[right[node]] = node;
+        } else if (symbol[node] >= 0) {
+            leaf[symbol[node]] = node;
+        } else {
+            nyt = node;
+        }
+    }
+
+    /**
+     * ----------------------------------------------------
+     *
+     *               Methods for encoding.
+     *
+     * ----------------------------------------------------
+     */
+
+    /**
+     * Writes the code of a byte and updates the trie.
+     *
+     * @param b             the byte.
+     * @param bitFileWriter the writer of the bits.
+     */
+    void encode(int b, BitFileWriter bitFileWriter) {
+        int node = leaf[b] >= 0 ? leaf[b] : nyt;
+        int length = 0;
+        while (node != ROOT) {
+            int up = parent[node];
+            path[length++] = right[up] == node ? 1 : 0;
+            node = up;
+        }
+        for (int i = length - 1; i >= 0; i--) bitFileWriter.writeBits(path[i], 1);
+        if (leaf[b] < 0) bitFileWriter.writeBits(b, 8);
+        update(b);
+    }
+
+    /**
+     * Compresses the input until it ends. Each read of the input becomes a frame, which is written
+     * and flushed before the next read, so the latency of a frame does not depend on the input after it.
+     *
+     * @param in  the input.
+     * @param out the stream of the compressed frames.
+     * @throws IOException if the input could not be read or the output written.
+     */
+    static void encode(InputStream in, OutputStream out) throws IOException {
+        AdaptiveHuffman model = new AdaptiveHuffman();
+        BitFileWriter bitFileWriter = new BitFileWriter(out);
+        byte[] chunk = new byte[FRAME_SIZE];
+        int n;
+        while ((n = in.read(chunk)) >= 0) {
+            if (n == 0) continue;
+            bitFileWriter.writeHeader(varint(n));
+            for (int i = 0; i < n; i++) model.encode(chunk[i] & 0xff, bitFileWriter);
+            bitFileWriter.flush();
+        }
+        bitFileWriter.writeHeader(varint(0));
+        bitFileWriter.flush();
+    }
+
+    private static byte[] varint(int value) {
+        byte[] bytes = new byte[5];
+        int n = 0;
+        while ((value & ~0x7f) != 0) {
+            bytes[n++] = (byte) ((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        bytes[n++] = (byte) value;
+        return Arrays.copyOf(bytes, n);
+    }
+
+    /**
+     * ----------------------------------------------------
+     *
+     *               Methods for decoding.
+     *
+     * ----------------------------------------------------
+     */
+
+    /**
+     * Reads the bits of the compressed stream, a frame always starts on a new byte.
+     */
+    private static class BitInput {
+        private final InputStream in;
+        private int buffer;                             //current byte read from the stream.
+        private int bitsLeft;                           //Number of bits left in the current byte.
+
+        BitInput(InputStream in) {
+            this.in = in;
+        }
+
+        int readBit() throws IOException {
+            if (bitsLeft == 0) {
+                buffer = in.read();
+                if (buffer < 0) throw new EOFException("The compressed stream ended in the middle of a frame.");
+                bitsLeft = 8;
+            }
+            bitsLeft--;
+            return (buffer >> bitsLeft) & 1;
+        }
+
+        int readBits(int count) throws IOException {
+            int value = 0;
+            for (int i = 0; i < count; i++) value = (value << 1) | readBit();
+            return value;
+        }
+
+        //Skips the padding at the end of a frame.
+        void align() {
+            bitsLeft = 0;
+        }
+
+        int readVarint() throws IOException {
+            int value = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                int b = in.read();
+                if (b < 0) throw new EOFException("The compressed stream has no end frame.");
+                value |= (b & 0x7f) << shift;
+                if ((b & 0x80) == 0) return value;
+            }
+            throw new IOException("The length of a frame is damaged.");
+        }
+    }
+
+    /**
+     * Reads the code of the next byte and updates the trie.
+     *
+     * @param bitInput the reader of the bits.
+     * @return the byte.
+     * @throws IOException if the stream ends before the code does.
+     */
+    private int decode(BitInput bitInput) throws IOException {
+        int node = ROOT;
+        while (left[node] >= 0) node = bitInput.readBit() == 0 ? left[node] : right[node];
+        int b = symbol[node] >= 0 ? symbol[node] : bitInput.readBits(8);
+        update(b);
+        return b;
+    }
+
+    /**
+     * Decompresses frames until the end frame, each frame is written and flushed when it is decoded.
+     *
+     * @param in  the stream of the compressed frames.
+     * @param out the decompressed output.
+     * @throws IOException if the input could not be read or the output written.
+     */
+    static void decode(InputStream in, OutputStream out) throws IOException {
+        AdaptiveHuffman model = new AdaptiveHuffman();
+        BitInput bitInput = new BitInput(in);
+        byte[] chunk = new byte[FRAME_SIZE];
+        int n;
+        while ((n = bitInput.readVarint()) > 0) {
+            if (n > FRAME_SIZE) throw new IOException("The frame of " + n + " bytes is too large.");
+            for (int i = 0; i < n; i++) chunk[i] = (byte) model.decode(bitInput);
+            bitInput.align();
+            out.write(chunk, 0, n);
+            out.flush();
+        }
+    }
+}
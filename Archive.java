@@ -0,0 +1,352 @@
+package huffman_coding;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * An archive of all files in a directory tree. The files are compressed concurrently, one task per
+ * file, and each file is stored as a stream of {@link HuffmanOutputStream} frames. The archive ends
+ * with a central directory of the members, followed by the position of the directory in the last
+ * 8 bytes, so one member can be extracted without reading the others.
+ * <p>
+ * The tasks run on virtual threads if the runtime has them, so a task that waits for the disk does
+ * not hold a platform thread. The compression itself is bounded by a semaphore with one permit per
+ * core. A task writes the frames of its member to a temporary file next to the archive, and the file
+ * is transferred to the end of the archive when the member is done, so a task only keeps one frame
+ * in memory whatever the size of its member.
+ * <p>
+ * The archive starts with a magic number and the version. Each entry of the directory is the name of
+ * the member, its original length, the position and the length of its frames, and the CRC-32 of the
+ * original bytes.
+ *
+ * @author Gustaf Rydholm
+ * @author Addi Djikic
+ *         CELTE13
+ *         DD1332
+ *         2016-02-25
+ */
+class Archive {
+    static final int MAGIC = 0x48554641;                //"HUFA".
+    static final int VERSION = 1;                       //Version of the format.
+    static final int FRAME_SIZE = 1 << 20;              //Number of original bytes in a frame of a member.
+    private static final int START_LENGTH = 5;          //Number of bytes of the magic number and the version.
+
+    /**
+     * An entry of the central directory.
+     */
+    static class Member {
+        final String name;                              //Path of the file relative to the directory, with / between the names.
+        final long length;                              //Number of original bytes.
+        final long offset;                              //Position of the first frame in the archive.
+        final long compressedLength;                    //Number of bytes of the frames.
+        final int crc;                                  //CRC-32 of the original bytes.
+
+        Member(String name, long length, long offset, long compressedLength, int crc) {
+            this.name = name;
+            this.length = length;
+            this.offset = offset;
+            this.compressedLength = compressedLength;
+            this.crc = crc;
+        }
+    }
+
+    private final FileChannel channel;                  //Channel of the archive, members are appended in the order they are done.
+    private final Path temporaryDirectory;              //Where the frames of the members are written before they are appended.
+    private final Semaphore cpu;                        //One permit per thread that may compress at the same time.
+    private final HuffmanCodec codec = new HuffmanCodec();
+    private final List<Member> members = new ArrayList<>();
+    private long position = START_LENGTH;               //Position of the next member.
+
+    private Archive(FileChannel channel, Path temporaryDirectory, int threads) {
+        this.channel = channel;
+        this.temporaryDirectory = temporaryDirectory;
+        this.cpu = new Semaphore(threads);
+    }
+
+    /**
+     * ----------------------------------------------------
+     *
+     *               Methods for creating an archive.
+     *
+     * ----------------------------------------------------
+     */
+
+    /**
+     * Compresses every file in the directory tree into one archive.
+     *
+     * @param directory     the directory that is archived.
+     * @param nameOfArchive name of the archive.
+     * @param threads       most files that are compressed at the same time.
+     * @return the members of the archive, sorted by name.
+     * @throws IOException if a file could not be read or the archive written.
+     */
+    static List<Member> create(Path directory, String nameOfArchive, int threads) throws IOException {
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(directory)) {
+            files = walk.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+        }
+        try (FileChannel channel = FileChannel.open(Paths.get(nameOfArchive), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer start = ByteBuffer.allocate(START_LENGTH).putInt(MAGIC).put((byte) VERSION);
+            start.flip();
+            writeFully(channel, start, 0);
+            Path parent = Paths.get(nameOfArchive).toAbsolutePath().getParent();
+            Archive archive = new Archive(channel, parent, threads);
+            archive.compressAll(directory, files, threads);
+            archive.writeDirectory();
+            return archive.members;
+        }
+    }
+
+    /**
+     * Compresses the files, one task per file, and waits for all of them.
+     */
+    private void compressAll(Path directory, List<Path> files, int threads) throws IOException {
+        ExecutorService executor = newFileExecutor(threads);
+        try {
+            List<Future<Member>> futures = new ArrayList<>();
+            for (Path file : files) {
+                String name = directory.relativize(file).toString().replace(file.getFileSystem().getSeparator(), "/");
+                futures.add(executor.submit(() -> compress(file, name)));
+            }
+            for (Future<Member> future : futures) future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("The archiving was interrupted.", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Could not archive a file.", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Creates an executor with a virtual thread per task. Before Java 21 there are no virtual threads,
+     * so the method is looked up by reflection, and a pool of platform threads is used without them.
+     *
+     * @param threads number of threads that may compress at the same time.
+     * @return the executor.
+     */
+    static ExecutorService newFileExecutor(int threads) {
+        try {
+            Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) method.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            //Twice the threads of the semaphore, so the disk is used while the other half compresses.
+            return Executors.newFixedThreadPool(2 * threads);
+        }
+    }
+
+    /**
+     * Compresses one file and appends it to the archive.
+     *
+     * @param file the file.
+     * @param name the name of the member.
+     * @return the member.
+     * @throws IOException          if the file could not be read or the archive written.
+     * @throws InterruptedException if the task was interrupted while it waited for a permit.
+     */
+    private Member compress(Path file, String name) throws IOException, InterruptedException {
+        Path temporary = Files.createTempFile(temporaryDirectory, "huffman-member", ".tmp");
+        try {
+            return compress(file, name, temporary);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * Compresses one file to the temporary file and appends that to the archive.
+     */
+    private Member compress(Path file, String name, Path temporary) throws IOException, InterruptedException {
+        CRC32 crc = new CRC32();
+        long length = 0;
+        byte[] frame = new byte[FRAME_SIZE];
+        byte[] compressed = new byte[HuffmanCodec.maxCompressedLength(FRAME_SIZE)];
+        try (InputStream in = Files.newInputStream(file);
+             DataOutputStream frames = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary), 1 << 16))) {
+            int n;
+            //The frame is read without a permit, so only the compression is bounded by the cores.
+            while ((n = in.readNBytes(frame, 0, FRAME_SIZE)) > 0) {
+                crc.update(frame, 0, n);
+                length += n;
+                int size;
+                cpu.acquire();
+                try {
+                    size = codec.compress(frame, 0, n, compressed, 0, compressed.length);
+                } finally {
+                    cpu.release();
+                }
+                //The frames of a HuffmanOutputStream: the number of compressed bytes, then the bytes.
+                frames.writeInt(size);
+                frames.write(compressed, 0, size);
+            }
+            frames.writeInt(0);
+        }
+        try (FileChannel frames = FileChannel.open(temporary, StandardOpenOption.READ)) {
+            return append(name, length, (int) crc.getValue(), frames);
+        }
+    }
+
+    /**
+     * Appends the frames of a member at the end of the archive, the frames are transferred from their
+     * file by the channels without a copy on the heap.
+     */
+    private synchronized Member append(String name, long length, int crc, FileChannel frames) throws IOException {
+        long size = frames.size();
+        for (long done = 0; done < size; ) {
+            long n = channel.transferFrom(frames, position + done, size - done);
+            if (n <= 0) throw new IOException("The frames of " + name + " ended while they were appended.");
+            done += n;
+        }
+        Member member = new Member(name, length, position, size, crc);
+        position += size;
+        members.add(member);
+        return member;
+    }
+
+    /**
+     * Writes the central directory, sorted by name, and its position after the last member.
+     */
+    private void writeDirectory() throws IOException {
+        members.sort(Comparator.comparing(member -> member.name));
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(members.size());
+        for (Member member : members) {
+            out.writeUTF(member.name);
+            out.writeLong(member.length);
+            out.writeLong(member.offset);
+            out.writeLong(member.compressedLength);
+            out.writeInt(member.crc);
+        }
+        out.writeLong(position);
+        writeFully(channel, ByteBuffer.wrap(bytes.toByteArray()), position);
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        int start = buffer.position();
+        while (buffer.hasRemaining()) channel.write(buffer, position + buffer.position() - start);
+    }
+
+    /**
+     * ----------------------------------------------------
+     *
+     *               Methods for reading an archive.
+     *
+     * ----------------------------------------------------
+     */
+
+    /**
+     * Reads the central directory of the archive.
+     *
+     * @param pathToArchive path to the archive.
+     * @return the members of the archive.
+     * @throws IOException if the file is not an archive or the directory is damaged.
+     */
+    static List<Member> list(String pathToArchive) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(pathToArchive), StandardOpenOption.READ)) {
+            return readDirectory(channel);
+        }
+    }
+
+    private static List<Member> readDirectory(FileChannel channel) throws IOException {
+        long size = channel.size();
+        if (size < START_LENGTH + 12) throw new IOException("The file is not an archive.");
+        ByteBuffer start = ByteBuffer.allocate(START_LENGTH);
+        BlockIndex.readFully(channel, start, 0);
+        if (start.getInt(0) != MAGIC) throw new IOException("The file is not an archive.");
+        if (start.get(4) != VERSION) throw new IOException("Unknown version " + start.get(4) + " of the archive.");
+
+        ByteBuffer end = ByteBuffer.allocate(8);
+        BlockIndex.readFully(channel, end, size - 8);
+        long directoryPosition = end.getLong(0);
+        if (directoryPosition < START_LENGTH || directoryPosition > size - 12 || size - directoryPosition > Integer.MAX_VALUE) {
+            throw new IOException("The position of the central directory is outside of the archive.");
+        }
+        byte[] directory = new byte[(int) (size - directoryPosition)];
+        BlockIndex.readFully(channel, ByteBuffer.wrap(directory), directoryPosition);
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(directory));
+        int count = in.readInt();
+        if (count < 0) throw new IOException("The central directory is damaged.");
+        List<Member> members = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Member member = new Member(in.readUTF(), in.readLong(), in.readLong(), in.readLong(), in.readInt());
+            if (member.length < 0 || member.offset < START_LENGTH || member.compressedLength < 0
+                    || member.offset + member.compressedLength > directoryPosition) {
+                throw new IOException("The entry of " + member.name + " in the central directory is damaged.");
+            }
+            members.add(member);
+        }
+        return members;
+    }
+
+    /**
+     * Extracts one member of the archive. Only the frames of the member are read.
+     *
+     * @param pathToArchive     path to the archive.
+     * @param name              the name of the member.
+     * @param nameOfDecodedFile name of the extracted file.
+     * @return the member.
+     * @throws IOException if the member is missing or damaged, or the file could not be written.
+     */
+    static Member extract(String pathToArchive, String name, String nameOfDecodedFile) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(pathToArchive), StandardOpenOption.READ)) {
+            for (Member member : readDirectory(channel)) {
+                if (!member.name.equals(name)) continue;
+                try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(Paths.get(nameOfDecodedFile)), 1 << 16)) {
+                    extract(channel, member, out);
+                }
+                return member;
+            }
+        }
+        throw new IOException("The archive has no member " + name + ".");
+    }
+
+    /**
+     * Decodes the frames of a member and checks its length and CRC-32.
+     */
+    private static void extract(FileChannel channel, Member member, OutputStream out) throws IOException {
+        channel.position(member.offset);
+        InputStream in = new HuffmanInputStream(new BufferedInputStream(Channels.newInputStream(channel), 1 << 16));
+        CRC32 crc = new CRC32();
+        byte[] chunk = new byte[BitFileReader.CHUNK_SIZE];
+        long length = 0;
+        int n;
+        while ((n = in.read(chunk)) > 0) {
+            crc.update(chunk, 0, n);
+            out.write(chunk, 0, n);
+            length += n;
+        }
+        if (length != member.length || (int) crc.getValue() != member.crc) {
+            throw new IOException("The member " + member.name + " is damaged.");
+        }
+    }
+}
@@ -0,0 +1,268 @@
+package huffman_coding;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs many compressions and decompressions in one JVM, so the start of the JVM and the warm up of the
+ * JIT are paid once instead of once per file. The jobs are read from a manifest, one job per line:
+ * <tt>compress</tt> or <tt>decompress</tt>, the input file and the output file, separated by white
+ * space. Empty lines and lines that start with <tt>#</tt> are skipped.
+ * <p>
+ * The jobs run on a pool of worker threads. Each worker keeps its buffers for the input and the
+ * output between jobs, so a job only allocates when its file is larger than every file the worker
+ * has had before. A file is compressed as one piece by a {@link HuffmanCodec}, so the compressed file
+ * is read by the Decoder in the canonical mode. All jobs share one codec and its {@link CodeTableCache},
+ * so files with nearly the same distribution of bytes reuse the code and the decode table of the ones
+ * before them. A job that fails is reported and the others go on.
+ * <p>
+ * Usage: java Batch [-threads N] [-metrics] -manifest, or - for stdin-
+ *
+ * @author Gustaf Rydholm
+ * @author Addi Djikic
+ *         CELTE13
+ *         DD1332
+ *         2016-02-25
+ */
+public class Batch {
+    static final int CACHE_CAPACITY = 64;               //Number of codes and of decode tables in the cache.
+    static final double CACHE_TOLERANCE = 0.01;         //How much larger than optimal a cached code may be.
+
+    /**
+     * A line of the manifest.
+     */
+    static class Job {
+        final boolean compress;                         //True to compress, false to decompress.
+        final String input;                             //Path to the input file.
+        final String output;                            //Path to the output file.
+
+        Job(boolean compress, String input, String output) {
+            this.compress = compress;
+            this.input = input;
+            this.output = output;
+        }
+    }
+
+    /**
+     * The result of a job.
+     */
+    static class Result {
+        final Job job;
+        final long bytesIn;                             //Number of bytes read.
+        final long bytesOut;                            //Number of bytes written.
+        final long nanos;                               //Time of the job.
+
+        Result(Job job, long bytesIn, long bytesOut, long nanos) {
+            this.job = job;
+            this.bytesIn = bytesIn;
+            this.bytesOut = bytesOut;
+            this.nanos = nanos;
+        }
+    }
+
+    /**
+     * The buffers of a worker, reused for all of its jobs.
+     */
+    private static class Scratch {
+        byte[] input = new byte[0];                     //The bytes of the input file.
+        byte[] output = new byte[0];                    //The bytes of the output file.
+    }
+
+    private final HuffmanCodec codec;
+    private final ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(Scratch::new);
+
+    Batch(HuffmanCodec codec) {
+        this.codec = codec;
+    }
+
+    /**
+     * ----------------------------------------------------
+     *
+     *               Methods for the manifest.
+     *
+     * ----------------------------------------------------
+     */
+
+    /**
+     * Reads the jobs of a manifest.
+     *
+     * @param in the manifest.
+     * @return the jobs in the order of the manifest.
+     * @throws IOException if the manifest could not be read or a line is not a job.
+     */
+    static List<Job> readManifest(InputStream in) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        List<Job> jobs = new ArrayList<>();
+        String line;
+        int number = 0;
+        while ((line = reader.readLine()) != null) {
+            number++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) continue;
+            String[] fields = line.split("\\s+");
+            if (fields.length != 3 || !(fields[0].equals("compress") || fields[0].equals("decompress"))) {
+                throw new IOException("Line " + number + " of the manifest is not a job: " + line);
+            }
+            jobs.add(new Job(fields[0].equals("compress"), fields[1], fields[2]));
+        }
+        return jobs;
+    }
+
+    /**
+     * ----------------------------------------------------
+     *
+     *               Methods for running the jobs.
+     *
+     * ----------------------------------------------------
+     */
+
+    /**
+     * Runs the jobs on the worker threads and prints a line for each job, in the order of the manifest,
+     * followed by the total.
+     *
+     * @param jobs    the jobs.
+     * @param threads number of worker threads.
+     * @param console where the lines are printed.
+     * @return number of jobs that failed.
+     * @throws InterruptedException if the batch was interrupted.
+     */
+    int runAll(List<Job> jobs, int threads, PrintStream console) throws InterruptedException {
+        long start = System.nanoTime();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        int failed = 0;
+        long bytesIn = 0, bytesOut = 0;
+        try {
+            List<Future<Result>> futures = new ArrayList<>();
+            for (Job job : jobs) futures.add(executor.submit(() -> run(job)));
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    Result result = futures.get(i).get();
+                    bytesIn += result.bytesIn;
+                    bytesOut += result.bytesOut;
+                    console.println(line(result));
+                } catch (ExecutionException e) {
+                    failed++;
+                    Job job = jobs.get(i);
+                    console.println((job.compress ? "compress " : "decompress ") + job.input + " failed: " + e.getCause());
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        long nanos = System.nanoTime() - start;
+        console.println(String.format(Locale.ROOT, "%d jobs, %d failed, %d bytes in, %d bytes out in %d ms, %.1f MB/s",
+                jobs.size(), failed, bytesIn, bytesOut, nanos / 1000000, megabytesPerSecond(bytesIn, nanos)));
+        return failed;
+    }
+
+    /**
+     * Runs one job with the buffers of the current worker.
+     *
+     * @param job the job.
+     * @return the result.
+     * @throws IOException if the input could not be read, is damaged, or the output could not be written.
+     */
+    Result run(Job job) throws IOException {
+        long start = System.nanoTime();
+        Scratch buffers = scratch.get();
+        int length = read(job.input, buffers);
+        int outputLength;
+        if (job.compress) {
+            int size = HuffmanCodec.maxCompressedLength(length);
+            if (buffers.output.length < size) buffers.output = new byte[size];
+            outputLength = codec.compress(buffers.input, 0, length, buffers.output, 0, size);
+        } else {
+            try {
+                long count = HuffmanCodec.decompressedLength(buffers.input, 0, length);
+                if (count > Integer.MAX_VALUE) throw new IOException("The " + count + " original bytes do not fit in an array.");
+                if (buffers.output.length < count) buffers.output = new byte[(int) count];
+                outputLength = codec.decompress(buffers.input, 0, length, buffers.output, 0, (int) count);
+            } catch (IllegalArgumentException e) {
+                throw new IOException("The file " + job.input + " is damaged.", e);
+            }
+        }
+        try (OutputStream out = Files.newOutputStream(Paths.get(job.output))) {
+            out.write(buffers.output, 0, outputLength);
+        }
+        return new Result(job, length, outputLength, System.nanoTime() - start);
+    }
+
+    /**
+     * Reads the whole input file into the input buffer of the worker, which grows if it is too small.
+     *
+     * @return number of bytes in the file.
+     */
+    private static int read(String path, Scratch buffers) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE - 8) throw new IOException("The file " + path + " is too large for a batch job.");
+            if (buffers.input.length < size) buffers.input = new byte[(int) size];
+            ByteBuffer buffer = ByteBuffer.wrap(buffers.input, 0, (int) size);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) throw new IOException("The file " + path + " ended while it was read.");
+            }
+            return (int) size;
+        }
+    }
+
+    private static String line(Result result) {
+        return String.format(Locale.ROOT, "%s %s -> %s: %d bytes to %d bytes in %.3f ms, %.1f MB/s",
+                result.job.compress ? "compress" : "decompress", result.job.input, result.job.output,
+                result.bytesIn, result.bytesOut, result.nanos / 1e6, megabytesPerSecond(result.bytesIn, result.nanos));
+    }
+
+    private static double megabytesPerSecond(long bytes, long nanos) {
+        return nanos == 0 ? 0 : bytes / (1024.0 * 1024.0) / (nanos / 1e9);
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int threads = Runtime.getRuntime().availableProcessors();
+        CodecMetrics metrics = null;
+        String manifest = null;
+        for (int arg = 0; arg < args.length; arg++) {
+            if (args[arg].equals("-threads")) threads = Integer.parseInt(args[++arg]);
+            else if (args[arg].equals("-metrics")) metrics = new CodecMetrics();
+            else manifest = args[arg];
+        }
+        if (manifest == null || threads < 1) {
+            System.err.println("Usage: java Batch [-threads N] [-metrics] -manifest, or - for stdin-");
+            return;
+        }
+        List<Job> jobs;
+        if (manifest.equals("-")) {
+            jobs = readManifest(System.in);
+        } else {
+            try (InputStream in = new FileInputStream(manifest)) {
+                jobs = readManifest(in);
+            }
+        }
+        CodeTableCache cache = new CodeTableCache(CACHE_CAPACITY, CACHE_TOLERANCE);
+        HuffmanCodec codec = new HuffmanCodec(CanonicalCode.MAX_CODE_LENGTH, 1, cache);
+        Batch batch = new Batch(metrics == null ? codec : codec.withMetrics(metrics));
+        int failed = batch.runAll(jobs, threads, System.out);
+        if (metrics != null) {
+            metrics.commit();
+            System.out.println(metrics.summaryLine());
+            System.out.println(cache);
+        }
+        if (failed > 0) System.exit(1);
+    }
+}
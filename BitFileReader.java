@@ -1,9 +1,13 @@
 package huffman_coding;
 
-import java.io.BufferedInputStream;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
@@ -20,9 +24,11 @@ import java.util.Set;
 public class BitFileReader {
     private static final int EOF = -1;          //end of file.
     private static final int maxByte = 256;     //Maximum size of a byte.
+    static final int CHUNK_SIZE = 1 << 16;      //Number of bytes read from a stream at a time.
+    static final long MAP_SIZE = 1 << 30;       //Number of bytes of the file in a mapped region.
 
-    private BufferedInputStream is;             //the input stream.
-    private static ObjectInputStream ois;       //the input stream of the trie root.
+    private FileChannel channel;                //Channel of the file that is compressed.
+    private long size;                          //Number of bytes in the file that is compressed.
 
     private int buffer;                         //current byte read from file.
 
@@ -34,10 +40,15 @@ public class BitFileReader {
     private boolean[] bitArray;                 //Array of bits read from file.
     boolean bit;                                //Current bit the the byte.
     int[] weightArray;                          //Array for the weight of each byte.
-    char[] inputArray;                          //The input of the file as chars.
+    long[] countArray;                          //Number of times each byte occurs in the file.
+    long inputLength;                           //Number of bytes in the input file.
+    char[] inputArray;                          //The compressed file as chars, for the bit by bit decoding.
+    byte[] compressedBytes;                     //The compressed file as bytes.
     Map<Character, String> mapOfTriePath;       //Path to the leaf in the Huffman trie.
     Set<Character> setOfBytes;                  //A set of all bytes in the input file.
     Node trieRoot;                              //Root of the Huffman trie.
+    CompressedHeader header;                    //Header of a file compressed in the canonical mode.
+    CodecMetrics metrics;                       //The metrics of the compression or decompression, or null.
 
 
     /**
@@ -47,8 +58,20 @@ public class BitFileReader {
      * @throws IOException taken care of in the Encoding constructor.
      */
     BitFileReader(String pathToFile) throws IOException {
+        this(pathToFile, (CodecMetrics) null);
+    }
+
+    /**
+     * Constructor for the encoding that records the reading and the counting in the metrics.
+     *
+     * @param pathToFile path name to the file that is going to be compressed.
+     * @param metrics    the metrics, or null.
+     * @throws IOException taken care of in the Encoding constructor.
+     */
+    BitFileReader(String pathToFile, CodecMetrics metrics) throws IOException {
         this.pathToFile = pathToFile;
-        reader();
+        this.metrics = metrics;
+        open();
         getWeight();
         close();
     }
@@ -63,36 +86,77 @@ public class BitFileReader {
     BitFileReader(String pathToFile, String pathToTrie) throws IOException {
         this.pathToFile = pathToFile;
         this.pathToTrie = pathToTrie;
-        reader();
-        makeByteArray();
+        compressedBytes = Files.readAllBytes(Paths.get(pathToFile));
         readTrie();
-        close();
     }
 
     /**
-     * Fill the buffer with the next byte in the file.
+     * Constructor for the decoding of a file compressed in the canonical mode,
+     * where the code lengths are in the header of the compressed file.
+     *
+     * @param pathToFile path to the compressed file.
+     * @param canonical  must be true, separates the constructor from the encoding constructor.
+     * @throws IOException handled in the decoding constructor.
      */
-    private void nextBuffer() {
-        try {
-            buffer = is.read();
-        } catch (IOException e) {
-            System.err.println("End Of File.");
-            buffer = EOF;
+    BitFileReader(String pathToFile, boolean canonical) throws IOException {
+        this(pathToFile, canonical, null);
+    }
+
+    /**
+     * Constructor for the decoding in the canonical mode that records the reading in the metrics.
+     *
+     * @param pathToFile path to the compressed file.
+     * @param canonical  must be true, separates the constructor from the encoding constructor.
+     * @param metrics    the metrics, or null.
+     * @throws IOException handled in the decoding constructor.
+     */
+    BitFileReader(String pathToFile, boolean canonical, CodecMetrics metrics) throws IOException {
+        this.pathToFile = pathToFile;
+        this.metrics = metrics;
+        CodecMetrics.Span span = metrics == null ? null : metrics.start(CodecMetrics.Phase.READ);
+        compressedBytes = Files.readAllBytes(Paths.get(pathToFile));
+        if (span != null) {
+            span.stop();
+            metrics.addBytesIn(compressedBytes.length);
         }
+        header = CompressedHeader.read(compressedBytes);
     }
 
     /**
-     * Reads the file, fills the buffer with the first byte in the file.
-     * readFile returns the input as a String.
-     * inputArray - a <tt>char</tt> array of the stringInput.
+     * Opens the file, the encoding reads it twice: once for the weights and once for the coding.
+     * The file is read through regions that are mapped to memory, so the bytes are not copied to
+     * the heap.
      *
-     * @throws IOException
+     * @throws IOException if the file could not be opened.
      */
-    private void reader() throws IOException {
-        is = new BufferedInputStream(new FileInputStream(pathToFile));
-        nextBuffer();
-        String stringInput = readFile();
-        inputArray = stringInput.toCharArray();
+    void open() throws IOException {
+        channel = FileChannel.open(Paths.get(pathToFile), StandardOpenOption.READ);
+        size = channel.size();
+    }
+
+    /**
+     * The number of regions of the file, all but the last are <tt>MAP_SIZE</tt> bytes.
+     *
+     * @return number of regions, 0 for an empty file.
+     */
+    int regionCount() {
+        return (int) ((size + MAP_SIZE - 1) / MAP_SIZE);
+    }
+
+    /**
+     * Maps a region of the file to memory. The region is read only, and its bytes are read with the
+     * absolute get methods from index 0 to its limit.
+     *
+     * @param index the index of the region.
+     * @return the region.
+     * @throws IOException if the region could not be mapped.
+     */
+    MappedByteBuffer region(int index) throws IOException {
+        long position = index * MAP_SIZE;
+        long start = System.nanoTime();
+        MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(MAP_SIZE, size - position));
+        if (metrics != null) metrics.add(CodecMetrics.Phase.READ, System.nanoTime() - start);
+        return region;
     }
 
 
@@ -105,42 +169,49 @@ public class BitFileReader {
      */
 
     /**
-     * Calculates the weight of each byte in the file.
-     */
-    private void getWeight() {
-        weightArray = new int[maxByte];
-        for (int i = 0; i < inputArray.length; i++) {
-            weightArray[inputArray[i]]++;
-        }
-    }
-
-    /**
-     * Checks if the input is empty.
-     * Adds the current buffer to currentByte, then calls for the update of the buffer.
+     * Calculates the weight of each byte in the file. The bytes are counted directly in the mapped
+     * regions of the file, on all cores, see {@link Histogram}. The set of bytes is made from the bytes
+     * that were counted.
      *
-     * @return a char between the value of 0 and 255.
+     * @throws IOException if the file could not be read.
      */
-    private char readByte() {
-        if (isEmpty()) throw new RuntimeException("The input stream is empty.");
-        int currentByte = buffer;
-        nextBuffer();
-        return (char) (currentByte & 0xff);
+    private void getWeight() throws IOException {
+        countArray = new long[maxByte];
+        for (int r = 0; r < regionCount(); r++) {
+            MappedByteBuffer region = region(r);
+            long start = System.nanoTime();
+            Histogram.count(region, countArray, Runtime.getRuntime().availableProcessors());
+            inputLength += region.limit();
+            if (metrics != null) metrics.add(CodecMetrics.Phase.HISTOGRAM, System.nanoTime() - start);
+        }
+        setOfBytes = new HashSet<>();
+        for (int b = 0; b < maxByte; b++) {
+            if (countArray[b] != 0) setOfBytes.add((char) b);
+        }
+        weightArray = toWeights(countArray);
+        if (metrics != null) {
+            metrics.addBytesIn(inputLength);
+            metrics.histogram(countArray);
+        }
     }
 
     /**
-     * Reads through the file and returns a string of the whole input.
+     * Converts the counts to weights of the Huffman trie. The sum of the weights has to fit in an
+     * <tt>int</tt>, so the counts of very large files are scaled down, bytes that occur are kept
+     * at a weight of at least 1.
      *
-     * @return a string of the whole file.
+     * @param counts number of times each byte occurs.
+     * @return the weight of each byte.
      */
-    private String readFile() {
-        setOfBytes = new HashSet<>();
-        StringBuilder sb = new StringBuilder();
-        while (!isEmpty()) {
-            char currentByte = readByte();
-            setOfBytes.add(currentByte);
-            sb.append(currentByte);
+    static int[] toWeights(long[] counts) {
+        long total = 0;
+        for (long count : counts) total += count;
+        int[] weights = new int[maxByte];
+        long divisor = total / (Integer.MAX_VALUE - maxByte) + 1;
+        for (int b = 0; b < maxByte; b++) {
+            if (counts[b] != 0) weights[b] = (int) Math.max(1, counts[b] / divisor);
         }
-        return sb.toString();
+        return weights;
     }
 
     /**
@@ -151,13 +222,27 @@ public class BitFileReader {
      * ----------------------------------------------------
      */
 
+    /**
+     * Makes the input array and the paths of each byte from the compressed bytes, which are
+     * needed when the trie is decoded bit by bit.
+     */
+    void prepareBitwise() {
+        inputArray = new char[compressedBytes.length];
+        setOfBytes = new HashSet<>();
+        for (int i = 0; i < compressedBytes.length; i++) {
+            inputArray[i] = (char) (compressedBytes[i] & 0xff);
+            setOfBytes.add(inputArray[i]);
+        }
+        makeByteArray();
+    }
+
     /**
      * Reads a file containing the root of the Huffman trie.
      *
      * @throws IOException handled in the constructor of the Decoder.
      */
     private void readTrie() throws IOException {
-        ois = new ObjectInputStream(new FileInputStream(pathToTrie));
+        ObjectInputStream ois = new ObjectInputStream(new FileInputStream(pathToTrie));
         try {
             trieRoot = (Node) ois.readObject();
         } catch (ClassNotFoundException e) {
@@ -227,8 +312,8 @@ public class BitFileReader {
         return buffer == EOF;
     }
 
-    private void close() throws IOException {
-        is.close();
+    void close() throws IOException {
+        channel.close();
     }
 
 }
\ No newline at end of file
@@ -1,6 +1,8 @@
 package huffman_coding;
 
 import java.io.*;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
 
 /**
  * @author Gustaf Rydholm
@@ -10,11 +12,54 @@ import java.io.*;
  *         2016-02-25
  */
 public class BitFileWriter {
-    private static BufferedOutputStream out;        //Output stream in order to write the de/compressed file.
-    private static ObjectOutputStream oos;          //Output stream for root of the Huffman trie.
+    private static final int BUFFER_SIZE = 1 << 16; //Number of bytes in the buffer before it is written to the stream.
 
-    private int buffer;                             //Contains the bits of the Huffman code that will be written to file.
-    private int bitsLeft;                           //The number of bits left before the buffer contains 8 bits.
+    private OutputStream out;                       //Output stream in order to write the de/compressed file.
+
+    private long accumulator;                       //Contains the bits of the Huffman codes that are not yet in the buffer.
+    private int bitCount;                           //The number of bits in the accumulator.
+    private final byte[] buffer;                    //The bytes that will be written to the stream.
+    private final int limit;                        //The size of the buffer.
+    private int position;                           //Number of bytes in the buffer.
+    CodecMetrics metrics;                           //Records the time of the writes to the stream, or null.
+
+    BitFileWriter() {
+        buffer = new byte[BUFFER_SIZE];
+        limit = BUFFER_SIZE;
+    }
+
+    /**
+     * Constructor for writing to a stream instead of a file, such as a buffer for one block.
+     *
+     * @param stream the stream the bits are written to.
+     */
+    BitFileWriter(OutputStream stream) {
+        this();
+        out = stream;
+    }
+
+    /**
+     * Constructor for writing directly to an array, without a stream. The array must be large
+     * enough for all the bytes, see {@link #position()}.
+     *
+     * @param destination the array the bytes are written to.
+     * @param offset      the index of the first byte.
+     * @param length      the number of bytes that may be written.
+     */
+    BitFileWriter(byte[] destination, int offset, int length) {
+        buffer = destination;
+        position = offset;
+        limit = offset + length;
+    }
+
+    /**
+     * The number of bytes written to the array, only used when the writer has no stream.
+     *
+     * @return the index after the last byte written.
+     */
+    int position() {
+        return position;
+    }
 
     /**
      * Creates a file with the file name.
@@ -24,8 +69,7 @@ public class BitFileWriter {
     void openFile(String fileName) {
         String path = fileName;
         try {
-            out = new BufferedOutputStream(new FileOutputStream(
-                    path));
+            out = new FileOutputStream(path);
         } catch (FileNotFoundException e) {
             System.out.println("Could not create file.");
             e.printStackTrace();
@@ -38,15 +82,65 @@ public class BitFileWriter {
      * @param b the original byte.
      */
     void writeDecompressed(char b) {
+        if (position == limit) flushBuffer();
+        buffer[position++] = (byte) b;
+    }
+
+    /**
+     * Write a block of decompressed bytes to file.
+     *
+     * @param bytes  array of the original bytes.
+     * @param offset index of the first byte to write.
+     * @param length number of bytes to write.
+     */
+    void writeDecompressed(byte[] bytes, int offset, int length) {
+        if (out == null) {
+            if (position + length > limit) throw new BufferOverflowException();
+            System.arraycopy(bytes, offset, buffer, position, length);
+            position += length;
+            return;
+        }
+        flushBuffer();
+        long start = System.nanoTime();
         try {
-            out.write((byte) b);
+            out.write(bytes, offset, length);
         } catch (IOException e) {
-            System.out.println("Could not write " + b + " to file.");
+            System.out.println("Could not write " + length + " bytes to file.");
             e.printStackTrace();
         }
+        record(start, length);
+    }
+
+    /**
+     * Write the remaining bytes of a buffer to file, such as a mapped region of a file that is stored
+     * raw. The bytes are copied through the buffer of the writer.
+     *
+     * @param bytes the original bytes, from the position to the limit.
+     */
+    void writeDecompressed(ByteBuffer bytes) {
+        while (bytes.hasRemaining()) {
+            if (position == limit) flushBuffer();
+            int length = Math.min(limit - position, bytes.remaining());
+            bytes.get(buffer, position, length);
+            position += length;
+        }
+    }
+
+    /**
+     * Adds a write to the stream to the metrics.
+     *
+     * @param start  the time the write started.
+     * @param length number of bytes written.
+     */
+    private void record(long start, int length) {
+        if (metrics == null) return;
+        metrics.add(CodecMetrics.Phase.WRITE, System.nanoTime() - start);
+        metrics.addBytesOut(length);
     }
 
     void closeFile() {
+        if (out == null) return;
+        flushBuffer();
         try {
             out.close();
         } catch (IOException e) {
@@ -56,18 +150,49 @@ public class BitFileWriter {
     }
 
     /**
-     * Writes the Huffman code for each byte to file.
+     * Writes a Huffman code to file, most significant bit first. The bits are packed into a 64-bit
+     * accumulator and moved to the buffer 32 bits at a time.
+     *
+     * @param code   the code of the byte, right aligned.
+     * @param length the length of the code, at most 32.
+     */
+    void writeBits(int code, int length) {
+        accumulator = (accumulator << length) | (code & ((1L << length) - 1));
+        bitCount += length;
+        if (bitCount >= 32) {
+            bitCount -= 32;
+            int word = (int) (accumulator >>> bitCount);
+            if (position > limit - 4) flushBuffer();
+            buffer[position] = (byte) (word >>> 24);
+            buffer[position + 1] = (byte) (word >>> 16);
+            buffer[position + 2] = (byte) (word >>> 8);
+            buffer[position + 3] = (byte) word;
+            position += 4;
+        }
+    }
+
+    /**
+     * Writes a Huffman code that may be longer than 32 bits, such as a deep path in the trie.
      *
-     * @param huffmanCode the path in the trie to a byte.
+     * @param code   the code of the byte, right aligned.
+     * @param length the length of the code.
      */
-    void writePath(String huffmanCode) {
-        for (int i = 0; i < huffmanCode.length(); i++) {
-            if (huffmanCode.charAt(i) == '0') {
-                writeBit(false);
-            } else if (huffmanCode.charAt(i) == '1') {
-                writeBit(true);
-            } else throw new IllegalStateException("Illegal state");
+    void writeBits(long code, int length) {
+        if (length > 32) {
+            writeBits((int) (code >>> 32), length - 32);
+            length = 32;
         }
+        writeBits((int) code, length);
+    }
+
+    /**
+     * Writes the header of the compressed file, must be called before any bits are written.
+     *
+     * @param header the header as bytes.
+     */
+    void writeHeader(byte[] header) {
+        if (bitCount != 0) throw new IllegalStateException("The header must be written before the bits.");
+        writeDecompressed(header, 0, header.length);
     }
 
     /**
@@ -77,7 +202,7 @@ public class BitFileWriter {
      */
     void writeTrie(Node root) {
         try {
-            oos = new ObjectOutputStream(new FileOutputStream(
+            ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(
                     "huffTrieRoot.bin"));
             oos.writeObject(root);
             oos.close();
@@ -88,6 +213,27 @@ public class BitFileWriter {
 
     }
 
+    /**
+     * Writes the bytes in the buffer to the stream.
+     */
+    private void flushBuffer() {
+        if (out == null) {
+            //Without a stream the array is the destination, the bytes stay in it.
+            if (position > limit - 4) throw new BufferOverflowException();
+            return;
+        }
+        if (position == 0) return;
+        long start = System.nanoTime();
+        try {
+            out.write(buffer, 0, position);
+        } catch (IOException e) {
+            System.err.println("Could not write " + position + " bytes to file.");
+            e.printStackTrace();
+        }
+        record(start, position);
+        position = 0;
+    }
+
 
 /**
  * -------------------------------------------------------------------------
@@ -98,32 +244,19 @@ public class BitFileWriter {
  * -------------------------------------------------------------------------
  */
 
-    /**
-     * Write the specified bit to standard output.
-     */
-    private void writeBit(boolean bit) {
-        // add bit to buffer
-        buffer <<= 1;
-
-        //If bit = true, the current LSB will be assigned to 1.
-        if (bit) buffer |= 1;
-
-        // if buffer is full (8 bits), write out as a single byte
-        bitsLeft++;
-        if (bitsLeft == 8) clearBuffer();
-    }
-
-    // write out any remaining bits in buffer to standard output, padding with 0s
+    // write out any remaining bits in the accumulator, padding the last byte with 0s
     private void clearBuffer() {
-        if (bitsLeft == 0) return;
-        if (bitsLeft > 0) buffer <<= (8 - bitsLeft);
-        try {
-            out.write(buffer);
-        } catch (IOException e) {
-            e.printStackTrace();
+        while (bitCount >= 8) {
+            bitCount -= 8;
+            if (position == limit) flushBuffer();
+            buffer[position++] = (byte) (accumulator >>> bitCount);
+        }
+        if (bitCount > 0) {
+            if (position == limit) flushBuffer();
+            buffer[position++] = (byte) (accumulator << (8 - bitCount));
         }
-        bitsLeft = 0;
-        buffer = 0;
+        bitCount = 0;
+        accumulator = 0;
     }
 
     /**
@@ -132,6 +265,8 @@ public class BitFileWriter {
      */
     public void flush() {
         clearBuffer();
+        if (out == null) return;
+        flushBuffer();
         try {
             out.flush();
         } catch (IOException e) {
@@ -145,6 +280,7 @@ public class BitFileWriter {
      */
     public void close() {
         flush();
+        if (out == null) return;
         try {
             out.close();
         } catch (IOException e) {
@@ -152,4 +288,4 @@ public class BitFileWriter {
         }
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,223 @@
+package huffman_coding;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Decodes a file compressed in the canonical mode by its blocks. The block index gives the first
+ * bit and the first original byte of each block, so a range of the original file can be decoded
+ * by reading only the blocks that contain it, and the blocks can be decoded in parallel.
+ * A file that is not split into blocks is handled as one block. If the code changes between blocks,
+ * the new codes are read when the file is opened, so each block can still be decoded on its own.
+ *
+ * @author Gustaf Rydholm
+ * @author Addi Djikic
+ *         CELTE13
+ *         DD1332
+ *         2016-02-25
+ */
+class BlockDecoder implements Closeable {
+    private static final int MAX_HEADER = 512;          //The header is never longer than this without contexts.
+
+    private final FileChannel channel;                  //Channel of the compressed file, read by all threads.
+    final CompressedHeader header;                      //Header of the compressed file.
+    final BlockIndex index;                             //Index of the blocks.
+    private final TableDecoder tableDecoder;            //Decoder of the code of the file, null with contexts or if stored.
+    private TableDecoder[] blockDecoders;               //Decoder of the code of each block, null if the code does not change.
+    private int[] codeLengths;                          //Number of bytes of the code at the start of each block that changes it.
+
+    /**
+     * Opens the compressed file and reads the header and the block index.
+     *
+     * @param pathToFile path to the compressed file.
+     * @throws IOException if the file is not compressed in the canonical mode.
+     */
+    BlockDecoder(String pathToFile) throws IOException {
+        this(pathToFile, null);
+    }
+
+    /**
+     * Opens a compressed file that may refer to a shared table.
+     *
+     * @param pathToFile     path to the compressed file.
+     * @param tableDirectory the directory of the shared tables, or null.
+     * @throws IOException if the file is not compressed in the canonical mode or the table is missing.
+     */
+    BlockDecoder(String pathToFile, File tableDirectory) throws IOException {
+        channel = FileChannel.open(Paths.get(pathToFile), StandardOpenOption.READ);
+        try {
+            byte[] start = new byte[(int) Math.min(channel.size(), MAX_HEADER)];
+            BlockIndex.readFully(channel, ByteBuffer.wrap(start), 0);
+            if (start.length > 5 && (start[5] & CompressedHeader.CONTEXTS) != 0) {
+                //The codes of the contexts make the header longer.
+                start = new byte[(int) Math.min(channel.size(), CompressedHeader.MAX_CONTEXT_LENGTH)];
+                BlockIndex.readFully(channel, ByteBuffer.wrap(start), 0);
+            }
+            header = CompressedHeader.read(start);
+            TrainedTable.resolve(header, tableDirectory);
+            if (header.hasBlocks()) {
+                index = BlockIndex.read(channel, header.hasStoredBlocks(), header.hasRetraining());
+            } else {
+                //The bits of a file without blocks start after the header and end at the end of the file.
+                index = new BlockIndex(1, header.isStored());
+                index.add(header.length * 8L, 0);
+                if (header.isStored()) index.stored[0] = true;
+                index.indexPosition = channel.size();
+            }
+            tableDecoder = header.code == null ? null : header.code.tableDecoder();
+            if (header.hasRetraining()) readCodes();
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Reads the code at the start of each block that changes it, the blocks after it use the same decoder.
+     *
+     * @throws IOException if a code could not be read.
+     */
+    private void readCodes() throws IOException {
+        blockDecoders = new TableDecoder[index.blockCount];
+        codeLengths = new int[index.blockCount];
+        TableDecoder current = tableDecoder;
+        for (int block = 0; block < index.blockCount; block++) {
+            if (index.isRetrained(block)) {
+                long start = index.bitOffsets[block] >>> 3;
+                byte[] bytes = new byte[(int) Math.min(MAX_HEADER, index.indexPosition - start)];
+                BlockIndex.readFully(channel, ByteBuffer.wrap(bytes), start);
+                ByteArrayInputStream stream = new ByteArrayInputStream(bytes);
+                current = CanonicalCode.read(new DataInputStream(stream)).tableDecoder();
+                codeLengths[block] = bytes.length - stream.available();
+            }
+            blockDecoders[block] = current;
+        }
+    }
+
+    /**
+     * Number of original bytes in a block.
+     *
+     * @param block the number of the block.
+     * @return the number of bytes.
+     */
+    long blockLength(int block) {
+        long end = block + 1 < index.blockCount ? index.uncompressedOffsets[block + 1] : header.symbolCount;
+        return end - index.uncompressedOffsets[block];
+    }
+
+    /**
+     * Reads the compressed bytes of a block and decodes the first symbols of it.
+     *
+     * @param block the number of the block.
+     * @param count number of symbols to decode from the start of the block.
+     * @return the decoded bytes.
+     * @throws IOException if the block could not be read.
+     */
+    byte[] decodeBlock(int block, int count) throws IOException {
+        long start = index.bitOffsets[block] >>> 3;
+        long end = block + 1 < index.blockCount ? (index.bitOffsets[block + 1] + 7) >>> 3 : index.indexPosition;
+        if (end - start > Integer.MAX_VALUE) throw new IOException("The block is too large to be read.");
+        byte[] in = new byte[(int) (end - start)];
+        BlockIndex.readFully(channel, ByteBuffer.wrap(in), start);
+        if (index.isStored(block)) {
+            //A stored block starts on a new byte with the original bytes.
+            if (count > in.length) throw new IOException("The stored block " + block + " is damaged.");
+            return Arrays.copyOf(in, count);
+        }
+        byte[] out = new byte[count];
+        //A block that changes the code starts on a new byte with the code lengths.
+        TableDecoder decoder = blockDecoders == null ? tableDecoder : blockDecoders[block];
+        int skip = codeLengths == null ? 0 : codeLengths[block];
+        if (header.hasContexts()) {
+            header.contexts.decode(in, index.bitOffsets[block] & 7, in.length, out, 0, count, 0);
+        } else if (header.hasStreams()) {
+            //A block with streams starts on a new byte with its jump table.
+            decoder.decodeStreams(in, skip, in.length, out, 0, (int) blockLength(block), count, header.streams);
+        } else {
+            decoder.decode(in, (index.bitOffsets[block] & 7) + 8L * skip, in.length, out, 0, count);
+        }
+        return out;
+    }
+
+    /**
+     * Decodes a range of the original file. Only the blocks that contain the range are read.
+     *
+     * @param from   position of the first byte in the original file.
+     * @param length number of bytes to decode.
+     * @return the bytes of the range.
+     * @throws IOException if a block could not be read.
+     */
+    byte[] decodeRange(long from, long length) throws IOException {
+        if (from < 0 || length < 0 || from + length > header.symbolCount) {
+            throw new IndexOutOfBoundsException("The range " + from + "+" + length
+                    + " is outside of the original file of " + header.symbolCount + " bytes.");
+        }
+        if (length > Integer.MAX_VALUE) throw new IllegalArgumentException("The range is too large for an array.");
+        byte[] range = new byte[(int) length];
+        if (length == 0) return range;
+        int first = index.blockOf(from);
+        int last = index.blockOf(from + length - 1);
+        int position = 0;
+        for (int block = first; block <= last; block++) {
+            long blockStart = index.uncompressedOffsets[block];
+            long skip = Math.max(0, from - blockStart);
+            long needed = Math.min(blockLength(block), from + length - blockStart);
+            if (needed > Integer.MAX_VALUE) throw new IllegalArgumentException("The block is too large for an array.");
+            byte[] decoded = decodeBlock(block, (int) needed);
+            System.arraycopy(decoded, (int) skip, range, position, (int) (needed - skip));
+            position += needed - skip;
+        }
+        return range;
+    }
+
+    /**
+     * Decodes all blocks on the worker threads and writes them in order.
+     * At most two blocks per thread are in flight.
+     *
+     * @param out     the stream of the decompressed file.
+     * @param threads number of worker threads.
+     * @throws IOException if a block could not be read or written.
+     */
+    void decodeAll(OutputStream out, int threads) throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            Deque<Future<byte[]>> inFlight = new ArrayDeque<>();
+            int next = 0;
+            for (int block = 0; block < index.blockCount; block++) {
+                while (next < index.blockCount && inFlight.size() < 2 * threads) {
+                    final int b = next++;
+                    if (blockLength(b) > Integer.MAX_VALUE) throw new IOException("The block is too large for an array.");
+                    inFlight.add(executor.submit(() -> decodeBlock(b, (int) blockLength(b))));
+                }
+                out.write(inFlight.poll().get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("The decompression was interrupted.", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Could not decompress a block.", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
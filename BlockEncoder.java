@@ -0,0 +1,302 @@
+package huffman_coding;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Compresses a file on all cores. The file is split into blocks of a fixed size. The weights of the
+ * file are counted in parallel by {@link Histogram} and made into one canonical code, then each block
+ * is encoded into its own buffer on a worker thread. The buffers are written in order, each block
+ * starts on a new byte, and the file ends with a {@link BlockIndex}. A block where the code saves
+ * too little is stored raw, see {@link StoredBlocks}.
+ * <p>
+ * With retraining, the header still has the code of the whole file, which is the current code that
+ * the blocks start from. Each block is compared with the current code by the exact number of bits it
+ * would take, against a code made for the block plus the bytes of its code lengths. The block starts
+ * with the new code only if that is smaller, and the new code is the current code of the blocks after
+ * it, so a file whose bytes change, such as a log with a binary part, gets a new code where the change
+ * is, and a file that does not change keeps one code. The codes are decided in the order of the blocks,
+ * and the blocks are still encoded on the worker threads.
+ *
+ * @author Gustaf Rydholm
+ * @author Addi Djikic
+ *         CELTE13
+ *         DD1332
+ *         2016-02-25
+ */
+class BlockEncoder {
+    static final int DEFAULT_BLOCK_SIZE = 1 << 20;      //Number of original bytes in a block.
+    static final int RETRAIN_BLOCK_SIZE = 1 << 16;      //Smaller blocks, so a change of the bytes is found sooner.
+    private static final int maxByte = 256;             //Maximum size of a byte.
+
+    private final String pathToFile;                    //Path to the file that is compressed.
+    private final int blockSize;                        //Number of original bytes in a block.
+    private final int threads;                          //Number of worker threads.
+    private final int maxLength;                        //The maximum code length.
+    private final int streams;                          //Number of interleaved streams in each block.
+
+    private FileChannel channel;                        //Channel of the input file, read by all threads.
+    private long inputLength;                           //Number of bytes in the input file.
+    private int blockCount;                             //Number of blocks in the input file.
+    CanonicalCode canonicalCode;                        //The code of all blocks.
+    CodecMetrics metrics;                               //The metrics of the compression, or null.
+    private boolean[] stored;                           //True for each block that is stored raw.
+    int storedCount;                                    //Number of blocks that are stored raw.
+    boolean retrain;                                    //True if a block may start with a new code.
+    int retrainedCount;                                 //Number of blocks that start with a new code.
+    private boolean[] retrained;                        //True for each block that starts with a new code.
+    private long[] fileCounts;                          //Number of times each byte occurs in the whole file.
+    private CanonicalCode currentCode;                  //The code of the last block that was coded, with retraining.
+
+    BlockEncoder(String pathToFile, int blockSize, int threads) {
+        this(pathToFile, blockSize, threads, CanonicalCode.MAX_CODE_LENGTH);
+    }
+
+    BlockEncoder(String pathToFile, int blockSize, int threads, int maxLength) {
+        this(pathToFile, blockSize, threads, maxLength, 1);
+    }
+
+    //Constructor for blocks that are split into interleaved streams, see InterleavedStreams.
+    BlockEncoder(String pathToFile, int blockSize, int threads, int maxLength, int streams) {
+        this.pathToFile = pathToFile;
+        this.blockSize = blockSize;
+        this.threads = threads;
+        this.maxLength = maxLength;
+        this.streams = streams;
+    }
+
+    int blockCount() {
+        return blockCount;
+    }
+
+    /**
+     * Compresses the file to the output file.
+     *
+     * @param nameOfCompressedFile name of the compressed file.
+     * @throws IOException if a file could not be read or written.
+     */
+    void encode(String nameOfCompressedFile) throws IOException {
+        channel = FileChannel.open(Paths.get(pathToFile), StandardOpenOption.READ);
+        try {
+            inputLength = channel.size();
+            blockCount = (int) ((inputLength + blockSize - 1) / blockSize);
+            //The file is counted through mapped regions and the blocks are read by the tasks that encode them,
+            //so the reads are in those phases.
+            CodecMetrics.Span span = metrics == null ? null : metrics.start(CodecMetrics.Phase.HISTOGRAM);
+            long[] countArray = new long[maxByte];
+            for (long position = 0; position < inputLength; position += BitFileReader.MAP_SIZE) {
+                MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, position,
+                        Math.min(BitFileReader.MAP_SIZE, inputLength - position));
+                Histogram.count(region, countArray, threads);
+            }
+            if (span != null) span.stop();
+            span = metrics == null ? null : metrics.start(CodecMetrics.Phase.CODE);
+            canonicalCode = CanonicalCode.fromWeights(BitFileReader.toWeights(countArray), maxLength);
+            fileCounts = countArray;
+            currentCode = canonicalCode;
+            if (span != null) span.stop();
+            span = metrics == null ? null : metrics.start(CodecMetrics.Phase.ENCODE);
+            writeBlocks(nameOfCompressedFile);
+            if (span != null) {
+                span.stop();
+                metrics.addBytesIn(inputLength);
+                metrics.addBytesOut(Files.size(Paths.get(nameOfCompressedFile)));
+                metrics.histogram(countArray);
+            }
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Encodes the blocks on the worker threads and writes them in order. At most two blocks per
+     * thread are in flight, so the memory used does not depend on the size of the file.
+     *
+     * @param nameOfCompressedFile name of the compressed file.
+     * @throws IOException if the compressed file could not be written.
+     */
+    private void writeBlocks(String nameOfCompressedFile) throws IOException {
+        CompressedHeader header = new CompressedHeader(inputLength, canonicalCode, blockSize);
+        header.setStreams(streams);
+        header.setStoredBlocks();
+        if (retrain) header.setRetraining();
+        BlockIndex index = new BlockIndex(blockCount, true, retrain);
+        stored = new boolean[blockCount];
+        retrained = new boolean[blockCount];
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(nameOfCompressedFile), 1 << 16))) {
+            byte[] headerBytes = header.toBytes();
+            out.write(headerBytes);
+            long position = headerBytes.length;
+
+            Deque<Future<byte[]>> inFlight = new ArrayDeque<>();
+            int next = 0;
+            for (int block = 0; block < blockCount; block++) {
+                while (next < blockCount && inFlight.size() < 2 * threads) {
+                    final int b = next++;
+                    inFlight.add(executor.submit(retrain ? planBlock(b) : () -> encodeBlock(b)));
+                }
+                byte[] compressed = inFlight.poll().get();
+                index.add(position * 8, (long) block * blockSize);
+                if (stored[block]) {
+                    index.stored[block] = true;
+                    storedCount++;
+                }
+                if (retrained[block]) {
+                    index.retrained[block] = true;
+                    retrainedCount++;
+                }
+                out.write(compressed);
+                position += compressed.length;
+            }
+            index.write(out, position);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("The compression was interrupted.", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Could not compress a block.", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Reads one block of the input file.
+     *
+     * @param block the number of the block.
+     * @return the bytes of the block.
+     * @throws IOException if the block could not be read.
+     */
+    private byte[] readBlock(int block) throws IOException {
+        long start = (long) block * blockSize;
+        byte[] bytes = new byte[(int) Math.min(blockSize, inputLength - start)];
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, start + buffer.position()) < 0) throw new IOException("Unexpected end of file.");
+        }
+        return bytes;
+    }
+
+    /**
+     * Encodes one block into its own buffer with the code of the file.
+     *
+     * @param block the number of the block.
+     * @return the compressed block, padded to a whole byte, or the original bytes if it is stored.
+     * @throws IOException if the block could not be read.
+     */
+    private byte[] encodeBlock(int block) throws IOException {
+        byte[] bytes = readBlock(block);
+        int[] counts = Histogram.count(bytes, 0, bytes.length);
+        long bits = CodeLengths.cost(counts, canonicalCode.lengths);
+        //The blocks add their own bits, since the stored blocks cost 8 bits per byte.
+        if (StoredBlocks.store(bits, streamOverhead(), bytes.length)) {
+            stored[block] = true;
+            if (metrics != null) metrics.stored(bytes.length);
+            return bytes;
+        }
+        if (metrics != null) metrics.code(canonicalCode.lengths, counts);
+        return encodeBlock(bytes, canonicalCode, false);
+    }
+
+    /**
+     * Chooses the code of the next block with retraining: the current code, a new code made for the
+     * block, or no code if the block is stored. The block is read and counted on the calling thread,
+     * since the choice of each block depends on the blocks before it, and only the encoding is left
+     * to the worker.
+     *
+     * @param block the number of the block, called in the order of the blocks.
+     * @return the task that encodes the block.
+     * @throws IOException if the block could not be read.
+     */
+    private Callable<byte[]> planBlock(int block) throws IOException {
+        byte[] bytes = readBlock(block);
+        int[] counts = Histogram.count(bytes, 0, bytes.length);
+        long currentBits = CodeLengths.cost(counts, currentCode.lengths);
+        CanonicalCode newCode = CanonicalCode.fromWeights(retrainWeights(counts), maxLength);
+        long newBits = CodeLengths.cost(counts, newCode.lengths);
+        //The new code is only worth its code lengths if it saves more bits than they take.
+        boolean change = newBits + 8L * newCode.writtenLength() < currentBits;
+        CanonicalCode code = change ? newCode : currentCode;
+        long bits = change ? newBits : currentBits;
+        if (StoredBlocks.store(bits, streamOverhead() + (change ? newCode.writtenLength() : 0), bytes.length)) {
+            stored[block] = true;
+            if (metrics != null) metrics.stored(bytes.length);
+            return () -> bytes;
+        }
+        if (change) {
+            currentCode = newCode;
+            retrained[block] = true;
+        }
+        if (metrics != null) metrics.code(code.lengths, counts);
+        return () -> encodeBlock(bytes, code, change);
+    }
+
+    /**
+     * The weights of a new code for a block. Bytes of the file that are not in the block get the
+     * weight 1, so every code has every byte of the file and a later block never needs a new code
+     * just because a byte is missing.
+     *
+     * @param counts number of times each byte occurs in the block.
+     * @return the weights.
+     */
+    private int[] retrainWeights(int[] counts) {
+        int[] weights = new int[maxByte];
+        for (int b = 0; b < maxByte; b++) weights[b] = counts[b] != 0 ? counts[b] : fileCounts[b] != 0 ? 1 : 0;
+        return weights;
+    }
+
+    private int streamOverhead() {
+        return streams > 1 ? InterleavedStreams.overhead(streams) : 0;
+    }
+
+    /**
+     * Encodes one block into its own buffer.
+     *
+     * @param bytes     the original bytes of the block.
+     * @param code      the code of the block.
+     * @param writeCode true if the block starts with the code lengths of the code.
+     * @return the compressed block, padded to a whole byte.
+     * @throws IOException if the code lengths could not be written.
+     */
+    private byte[] encodeBlock(byte[] bytes, CanonicalCode code, boolean writeCode) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(bytes.length / 2 + 16);
+        if (writeCode) {
+            DataOutputStream out = new DataOutputStream(buffer);
+            code.write(out);
+            out.flush();
+        }
+        if (streams > 1) {
+            //The code may be made for the whole file, so a block may need up to maxLength bits per byte.
+            byte[] streamBuffer = new byte[(int) (((long) bytes.length * code.maxLength + 7) / 8)
+                    + InterleavedStreams.overhead(streams)];
+            int length = InterleavedStreams.encode(code, bytes, 0, bytes.length, streams, streamBuffer, 0, streamBuffer.length);
+            buffer.write(streamBuffer, 0, length);
+            return buffer.toByteArray();
+        }
+        BitFileWriter bitFileWriter = new BitFileWriter(buffer);
+        int[] codes = code.codes;
+        int[] lengths = code.lengths;
+        for (byte b : bytes) {
+            bitFileWriter.writeBits(codes[b & 0xff], lengths[b & 0xff]);
+        }
+        bitFileWriter.close();
+        return buffer.toByteArray();
+    }
+}
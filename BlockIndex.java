@@ -0,0 +1,241 @@
+package huffman_coding;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * The index at the end of a compressed file that is split into blocks. For each block it has the
+ * position of the first bit of the block in the compressed file and the position of the first
+ * byte of the block in the original file. The last 8 bytes of the file is the position of the index.
+ * If the blocks may be stored raw, see {@link StoredBlocks}, the entries are followed by a bitmap of
+ * the stored blocks. If the code may change between blocks, a bitmap of the blocks that start with a
+ * new code follows.
+ *
+ * @author Gustaf Rydholm
+ * @author Addi Djikic
+ *         CELTE13
+ *         DD1332
+ *         2016-02-25
+ */
+class BlockIndex {
+    static final int ENTRY_SIZE = 16;               //Number of bytes of each block in the index.
+
+    long[] bitOffsets;                              //Position of the first bit of each block.
+    long[] uncompressedOffsets;                     //Position of the first original byte of each block.
+    int blockCount;                                 //Number of blocks in the file.
+    long indexPosition;                             //Position of the index, which is the end of the last block.
+    boolean[] stored;                               //True for each block that is stored raw, null if no block may be.
+    boolean[] retrained;                            //True for each block that starts with a new code, null if no block may.
+
+    BlockIndex(int capacity) {
+        bitOffsets = new long[Math.max(1, capacity)];
+        uncompressedOffsets = new long[Math.max(1, capacity)];
+    }
+
+    //Constructor for an index where the blocks may be stored raw.
+    BlockIndex(int capacity, boolean storedBlocks) {
+        this(capacity);
+        if (storedBlocks) stored = new boolean[bitOffsets.length];
+    }
+
+    //Constructor for an index where the blocks may be stored raw or start with a new code.
+    BlockIndex(int capacity, boolean storedBlocks, boolean retrainedBlocks) {
+        this(capacity, storedBlocks);
+        if (retrainedBlocks) retrained = new boolean[bitOffsets.length];
+    }
+
+    /**
+     * Checks if a block is stored raw.
+     *
+     * @param block the number of the block.
+     * @return true if the block is stored.
+     */
+    boolean isStored(int block) {
+        return stored != null && stored[block];
+    }
+
+    /**
+     * Checks if a block starts with a new code, which the blocks after it use until the next new code.
+     *
+     * @param block the number of the block.
+     * @return true if the block starts with a code.
+     */
+    boolean isRetrained(int block) {
+        return retrained != null && retrained[block];
+    }
+
+    /**
+     * Adds the next block to the index.
+     *
+     * @param bitOffset          position of the first bit of the block.
+     * @param uncompressedOffset position of the first original byte of the block.
+     */
+    void add(long bitOffset, long uncompressedOffset) {
+        if (blockCount == bitOffsets.length) {
+            bitOffsets = Arrays.copyOf(bitOffsets, blockCount * 2);
+            uncompressedOffsets = Arrays.copyOf(uncompressedOffsets, blockCount * 2);
+            if (stored != null) stored = Arrays.copyOf(stored, blockCount * 2);
+            if (retrained != null) retrained = Arrays.copyOf(retrained, blockCount * 2);
+        }
+        bitOffsets[blockCount] = bitOffset;
+        uncompressedOffsets[blockCount] = uncompressedOffset;
+        blockCount++;
+    }
+
+    /**
+     * Writes the index followed by its position in the file.
+     *
+     * @param out           the stream of the compressed file.
+     * @param indexPosition the position of the index in the compressed file.
+     * @throws IOException if the index could not be written.
+     */
+    void write(DataOutputStream out, long indexPosition) throws IOException {
+        out.writeInt(blockCount);
+        for (int i = 0; i < blockCount; i++) {
+            out.writeLong(bitOffsets[i]);
+            out.writeLong(uncompressedOffsets[i]);
+        }
+        if (stored != null) writeBitmap(out, stored);
+        if (retrained != null) writeBitmap(out, retrained);
+        out.writeLong(indexPosition);
+    }
+
+    private void writeBitmap(DataOutputStream out, boolean[] blocks) throws IOException {
+        byte[] bitmap = new byte[(blockCount + 7) / 8];
+        for (int i = 0; i < blockCount; i++) {
+            if (blocks[i]) bitmap[i >> 3] |= 1 << (i & 7);
+        }
+        out.write(bitmap);
+    }
+
+    private void readBitmap(ByteBuffer tail, boolean[] blocks) {
+        byte[] bitmap = new byte[(blockCount + 7) / 8];
+        tail.get(bitmap);
+        for (int i = 0; i < blockCount; i++) blocks[i] = (bitmap[i >> 3] & (1 << (i & 7))) != 0;
+    }
+
+    /**
+     * Reads the index at the end of the compressed file.
+     *
+     * @param file         the compressed file.
+     * @param storedBlocks true if the index has a bitmap of the stored blocks.
+     * @return the index of the blocks.
+     * @throws IOException if the file does not end with a valid index.
+     */
+    static BlockIndex read(byte[] file, boolean storedBlocks) throws IOException {
+        return read(file, storedBlocks, false);
+    }
+
+    /**
+     * Reads the index at the end of a compressed file where the code may change between blocks.
+     *
+     * @param file            the compressed file.
+     * @param storedBlocks    true if the index has a bitmap of the stored blocks.
+     * @param retrainedBlocks true if the index has a bitmap of the blocks that start with a new code.
+     * @return the index of the blocks.
+     * @throws IOException if the file does not end with a valid index.
+     */
+    static BlockIndex read(byte[] file, boolean storedBlocks, boolean retrainedBlocks) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(file);
+        if (file.length < 12) throw new IOException("The compressed file has no block index.");
+        long indexPosition = buffer.getLong(file.length - 8);
+        if (indexPosition < 0 || indexPosition > file.length - 12) {
+            throw new IOException("The position of the block index is outside of the file.");
+        }
+        buffer.position((int) indexPosition);
+        return parse(buffer.slice(), indexPosition, storedBlocks, retrainedBlocks);
+    }
+
+    /**
+     * Reads the index at the end of the compressed file without reading the blocks.
+     *
+     * @param channel      the channel of the compressed file.
+     * @param storedBlocks true if the index has a bitmap of the stored blocks.
+     * @return the index of the blocks.
+     * @throws IOException if the file does not end with a valid index.
+     */
+    static BlockIndex read(FileChannel channel, boolean storedBlocks) throws IOException {
+        return read(channel, storedBlocks, false);
+    }
+
+    /**
+     * Reads the index at the end of a compressed file where the code may change between blocks,
+     * without reading the blocks.
+     *
+     * @param channel         the channel of the compressed file.
+     * @param storedBlocks    true if the index has a bitmap of the stored blocks.
+     * @param retrainedBlocks true if the index has a bitmap of the blocks that start with a new code.
+     * @return the index of the blocks.
+     * @throws IOException if the file does not end with a valid index.
+     */
+    static BlockIndex read(FileChannel channel, boolean storedBlocks, boolean retrainedBlocks) throws IOException {
+        long size = channel.size();
+        if (size < 12) throw new IOException("The compressed file has no block index.");
+        ByteBuffer position = ByteBuffer.allocate(8);
+        readFully(channel, position, size - 8);
+        long indexPosition = position.getLong(0);
+        if (indexPosition < 0 || indexPosition > size - 12 || size - indexPosition > Integer.MAX_VALUE) {
+            throw new IOException("The position of the block index is outside of the file.");
+        }
+        byte[] tail = new byte[(int) (size - indexPosition)];
+        readFully(channel, ByteBuffer.wrap(tail), indexPosition);
+
+        return parse(ByteBuffer.wrap(tail), indexPosition, storedBlocks, retrainedBlocks);
+    }
+
+    /**
+     * Parses the index from the end of the compressed file.
+     *
+     * @param tail            the end of the file, starting at the index.
+     * @param indexPosition   the position of the index in the file.
+     * @param storedBlocks    true if the index has a bitmap of the stored blocks.
+     * @param retrainedBlocks true if the index has a bitmap of the blocks that start with a new code.
+     * @return the index of the blocks.
+     * @throws IOException if the index is damaged.
+     */
+    private static BlockIndex parse(ByteBuffer tail, long indexPosition, boolean storedBlocks, boolean retrainedBlocks)
+            throws IOException {
+        int blockCount = tail.getInt();
+        long bitmapLength = ((storedBlocks ? 1 : 0) + (retrainedBlocks ? 1 : 0)) * ((blockCount + 7L) / 8);
+        if (blockCount < 0 || (long) blockCount * ENTRY_SIZE + bitmapLength > tail.limit() - 12) {
+            throw new IOException("The block index is damaged.");
+        }
+        BlockIndex index = new BlockIndex(blockCount, storedBlocks, retrainedBlocks);
+        for (int i = 0; i < blockCount; i++) index.add(tail.getLong(), tail.getLong());
+        if (storedBlocks) index.readBitmap(tail, index.stored);
+        if (retrainedBlocks) index.readBitmap(tail, index.retrained);
+        index.indexPosition = indexPosition;
+        return index;
+    }
+
+    /**
+     * Finds the block that contains a byte of the original file.
+     *
+     * @param uncompressedPosition position of the byte in the original file.
+     * @return the number of the block.
+     */
+    int blockOf(long uncompressedPosition) {
+        int block = Arrays.binarySearch(uncompressedOffsets, 0, blockCount, uncompressedPosition);
+        return block >= 0 ? block : -block - 2;
+    }
+
+    /**
+     * Reads from the channel until the buffer is full.
+     *
+     * @param channel  the channel of the file.
+     * @param buffer   the buffer to fill.
+     * @param position the position in the file of the first byte.
+     * @throws IOException if the file ends before the buffer is full.
+     */
+    static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        int start = buffer.position();
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position() - start) < 0) {
+                throw new IOException("Unexpected end of the compressed file.");
+            }
+        }
+    }
+}
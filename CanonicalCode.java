@@ -0,0 +1,246 @@
+package huffman_coding;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * A canonical Huffman code. Only the code length of each byte is needed to rebuild the code:
+ * the codes are assigned in order of length, and bytes with the same length are assigned
+ * consecutive codes in the order of their value. The lengths are therefore all that has to be
+ * stored in the header of a compressed file, instead of the whole Huffman trie.
+ *
+ * @author Gustaf Rydholm
+ * @author Addi Djikic
+ *         CELTE13
+ *         DD1332
+ *         2016-02-25
+ */
+class CanonicalCode {
+    static final int MAX_CODE_LENGTH = 32;          //The codes are kept in an int.
+    private static final int maxByte = 256;         //Maximum size of a byte.
+    private static final ThreadLocal<long[]> scratch = ThreadLocal.withInitial(() -> new long[CodeLengths.SCRATCH_SIZE]);   //For CodeLengths.huffman.
+
+    final int[] lengths;                            //The code length of each byte, 0 if the byte is unused.
+    final int[] codes;                              //The code of each byte, right aligned.
+    int maxLength;                                  //Length of the longest code.
+    int unlimitedMaxLength;                         //Length of the longest code before the lengths were limited.
+    double ratioLoss;                               //How much larger the output is because of the limit, 0.01 is 1 %.
+
+    /**
+     * Assigns the canonical codes from the code lengths.
+     *
+     * @param lengths the code length of each byte, 0 if the byte is not in the input.
+     */
+    CanonicalCode(int[] lengths) {
+        this.lengths = lengths;
+        this.codes = new int[maxByte];
+        int[] lengthCount = new int[MAX_CODE_LENGTH + 1];
+        for (int b = 0; b < maxByte; b++) {
+            if (lengths[b] > MAX_CODE_LENGTH) {
+                throw new IllegalStateException("The code length " + lengths[b] + " is longer than "
+                        + MAX_CODE_LENGTH + " bits, the lengths must be limited.");
+            }
+            lengthCount[lengths[b]]++;
+            maxLength = Math.max(maxLength, lengths[b]);
+        }
+        lengthCount[0] = 0;
+
+        //The first code of each length follows the last code of the length before it.
+        int[] nextCode = new int[MAX_CODE_LENGTH + 2];
+        int code = 0;
+        for (int length = 1; length <= MAX_CODE_LENGTH; length++) {
+            code = (code + lengthCount[length - 1]) << 1;
+            nextCode[length] = code;
+        }
+        for (int b = 0; b < maxByte; b++) {
+            if (lengths[b] != 0) codes[b] = nextCode[lengths[b]]++;
+        }
+    }
+
+    /**
+     * Takes the code lengths from the depth of each leaf in the Huffman trie.
+     * A trie with only one leaf gets the code length 1, so each byte is still written as one bit.
+     *
+     * @param root the root of the Huffman trie.
+     * @return the canonical code with the same code lengths as the trie.
+     */
+    static CanonicalCode fromTrie(Node root) {
+        return new CanonicalCode(trieLengths(root));
+    }
+
+    /**
+     * Takes the code lengths from the Huffman trie, if a code is longer than maxLength the lengths
+     * are calculated again with the package-merge algorithm so no code is longer than maxLength.
+     *
+     * @param root        the root of the Huffman trie.
+     * @param weightArray the weights the trie was built from.
+     * @param maxLength   the maximum code length, at most {@link #MAX_CODE_LENGTH}.
+     * @return the canonical code.
+     */
+    static CanonicalCode fromTrie(Node root, int[] weightArray, int maxLength) {
+        return limit(trieLengths(root), weightArray, maxLength);
+    }
+
+    /**
+     * Uses the code lengths if no code is longer than maxLength, otherwise the lengths are
+     * calculated again with the package-merge algorithm.
+     *
+     * @param lengths     the code lengths of the Huffman code.
+     * @param weightArray the weights of the code.
+     * @param maxLength   the maximum code length.
+     * @return the canonical code.
+     */
+    private static CanonicalCode limit(int[] lengths, int[] weightArray, int maxLength) {
+        int unlimitedMaxLength = CodeLengths.maxLength(lengths);
+        maxLength = Math.min(maxLength, MAX_CODE_LENGTH);
+        if (unlimitedMaxLength <= maxLength) {
+            CanonicalCode code = new CanonicalCode(lengths);
+            code.unlimitedMaxLength = unlimitedMaxLength;
+            return code;
+        }
+        int[] limited = CodeLengths.limit(weightArray, maxLength);
+        CanonicalCode code = new CanonicalCode(limited);
+        code.unlimitedMaxLength = unlimitedMaxLength;
+        long optimal = CodeLengths.cost(weightArray, lengths);
+        code.ratioLoss = optimal == 0 ? 0 : (double) (CodeLengths.cost(weightArray, limited) - optimal) / optimal;
+        return code;
+    }
+
+    /**
+     * Calculates the code lengths of the weights without a Huffman trie, see {@link CodeLengths#huffman}.
+     *
+     * @param weightArray the weight of each byte.
+     * @return the canonical code of the weights.
+     */
+    static CanonicalCode fromWeights(int[] weightArray) {
+        return fromWeights(weightArray, MAX_CODE_LENGTH);
+    }
+
+    /**
+     * Calculates the code lengths of the weights without a Huffman trie, no code is longer than maxLength.
+     *
+     * @param weightArray the weight of each byte.
+     * @param maxLength   the maximum code length.
+     * @return the canonical code of the weights.
+     */
+    static CanonicalCode fromWeights(int[] weightArray, int maxLength) {
+        int[] lengths = new int[maxByte];
+        CodeLengths.huffman(weightArray, lengths, scratch.get());
+        return limit(lengths, weightArray, maxLength);
+    }
+
+    /**
+     * The depth of each leaf in the Huffman trie, a trie with only one leaf gets the depth 1.
+     *
+     * @param root the root of the Huffman trie.
+     * @return the code length of each byte.
+     */
+    private static int[] trieLengths(Node root) {
+        int[] lengths = new int[maxByte];
+        if (root != null) {
+            if (root.isLeaf()) lengths[root.getSymbol()] = 1;
+            else collectLengths(root, 0, lengths);
+        }
+        return lengths;
+    }
+
+    private static void collectLengths(Node node, int depth, int[] lengths) {
+        if (node == null) return;
+        if (node.isLeaf()) lengths[node.getSymbol()] = depth;
+        else {
+            collectLengths(node.left, depth + 1, lengths);
+            collectLengths(node.right, depth + 1, lengths);
+        }
+    }
+
+    /**
+     * Describes how the code lengths were limited, for the output of the encoder.
+     *
+     * @return a line about the limit, or null if the lengths were not limited.
+     */
+    String limitReport() {
+        if (unlimitedMaxLength <= maxLength) return null;
+        return String.format("Code lengths limited from %d to %d bits, the output is %.3f %% larger.",
+                unlimitedMaxLength, maxLength, ratioLoss * 100);
+    }
+
+    /**
+     * Creates a table decoder for the code.
+     *
+     * @return a decoder for the code.
+     */
+    TableDecoder tableDecoder() {
+        long[] longCodes = new long[maxByte];
+        for (int b = 0; b < maxByte; b++) longCodes[b] = codes[b] & 0xffffffffL;
+        return new TableDecoder(longCodes, lengths);
+    }
+
+    /**
+     * Writes the code lengths: a bitmap of 32 bytes that marks the bytes in the code, followed by
+     * one byte with the code length of each marked byte.
+     *
+     * @param out the stream of the header.
+     * @throws IOException if the header could not be written.
+     */
+    void write(DataOutputStream out) throws IOException {
+        byte[] bitmap = new byte[maxByte / 8];
+        for (int b = 0; b < maxByte; b++) {
+            if (lengths[b] != 0) bitmap[b >> 3] |= 1 << (b & 7);
+        }
+        out.write(bitmap);
+        for (int b = 0; b < maxByte; b++) {
+            if (lengths[b] != 0) out.writeByte(lengths[b]);
+        }
+    }
+
+    /**
+     * Number of bytes written by {@link #write(DataOutputStream)}.
+     *
+     * @return the size of the code lengths.
+     */
+    int writtenLength() {
+        int length = maxByte / 8;
+        for (int b = 0; b < maxByte; b++) {
+            if (lengths[b] != 0) length++;
+        }
+        return length;
+    }
+
+    /**
+     * Checks that the code has a code for every byte with a weight.
+     *
+     * @param weightArray number of times each byte occurs.
+     * @return true if every byte that occurs can be coded.
+     */
+    boolean covers(int[] weightArray) {
+        for (int b = 0; b < maxByte; b++) {
+            if (weightArray[b] != 0 && lengths[b] == 0) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Reads the code lengths written by {@link #write(DataOutputStream)}. The lengths must be a prefix
+     * code: none is longer than {@link #MAX_CODE_LENGTH}, and the sum of 2^-length over the bytes, the
+     * Kraft sum, is at most 1, otherwise two bytes would share a code.
+     *
+     * @param in the stream of the header.
+     * @return the canonical code of the lengths.
+     * @throws IOException if the header could not be read or the lengths are damaged.
+     */
+    static CanonicalCode read(DataInputStream in) throws IOException {
+        byte[] bitmap = new byte[maxByte / 8];
+        in.readFully(bitmap);
+        int[] lengths = new int[maxByte];
+        long kraft = 0;                             //The Kraft sum in units of 2^-MAX_CODE_LENGTH.
+        for (int b = 0; b < maxByte; b++) {
+            if ((bitmap[b >> 3] & (1 << (b & 7))) == 0) continue;
+            lengths[b] = in.readUnsignedByte();
+            if (lengths[b] > MAX_CODE_LENGTH) throw new IOException("The code length " + lengths[b] + " of byte " + b + " is damaged.");
+            if (lengths[b] != 0) kraft += 1L << (MAX_CODE_LENGTH - lengths[b]);
+        }
+        if (kraft > 1L << MAX_CODE_LENGTH) throw new IOException("The code lengths are not a prefix code.");
+        return new CanonicalCode(lengths);
+    }
+}
@@ -0,0 +1,237 @@
+package huffman_coding;
+
+import java.util.Arrays;
+
+/**
+ * Methods for the code lengths of a Huffman code. The lengths can be calculated directly from the
+ * weights on primitive arrays, without a trie of <tt>Node</tt>s. A Huffman trie of a skewed input can be very deep,
+ * so the code lengths can be limited to a maximum length with the package-merge algorithm, which gives
+ * the optimal code of all codes whose lengths are at most the maximum.
+ *
+ * @author Gustaf Rydholm
+ * @author Addi Djikic
+ *         CELTE13
+ *         DD1332
+ *         2016-02-25
+ */
+class CodeLengths {
+    private static final int maxByte = 256;         //Maximum size of a byte.
+    static final int SCRATCH_SIZE = 3 * maxByte;    //The keys, a copy of the keys and the counts of a radix sort.
+
+    private CodeLengths() {
+    }
+
+    /**
+     * Calculates the code lengths of a Huffman code of the weights in place, with the algorithm of
+     * Moffat and Katajainen. The bytes are sorted by weight, and the sorted weights are replaced by
+     * the parent of each internal node in a first pass, by the depth of each internal node in a second
+     * pass and by the depth of each leaf in a third pass. Nothing is allocated, the scratch array can be
+     * reused for every call.
+     *
+     * @param weightArray the weight of each byte.
+     * @param lengths     the array for the code length of each byte, 0 if the weight of the byte is 0.
+     * @param scratch     an array of at least {@link #SCRATCH_SIZE} elements.
+     */
+    static void huffman(int[] weightArray, int[] lengths, long[] scratch) {
+        //The weight is in the high bits and the byte in the low 8 bits, so the sort keeps the bytes with the weights.
+        int n = 0;
+        for (int b = 0; b < maxByte; b++) {
+            lengths[b] = 0;
+            if (weightArray[b] != 0) scratch[n++] = (long) weightArray[b] << 8 | b;
+        }
+        if (n == 0) return;
+        if (n == 1) {
+            lengths[(int) (scratch[0] & 0xff)] = 1;
+            return;
+        }
+        sort(scratch, n);
+        for (int i = 0; i < n; i++) lengths[(int) (scratch[i] & 0xff)] = i;
+        for (int i = 0; i < n; i++) scratch[i] >>>= 8;
+
+        //First pass: merge the two smallest of the leaves and the internal nodes, the internal nodes are in the front.
+        long[] a = scratch;
+        a[0] += a[1];
+        int root = 0, leaf = 2;
+        for (int next = 1; next < n - 1; next++) {
+            if (leaf >= n || a[root] < a[leaf]) {
+                a[next] = a[root];
+                a[root++] = next;
+            } else {
+                a[next] = a[leaf++];
+            }
+            if (leaf >= n || (root < next && a[root] < a[leaf])) {
+                a[next] += a[root];
+                a[root++] = next;
+            } else {
+                a[next] += a[leaf++];
+            }
+        }
+
+        //Second pass: the depth of each internal node from the depth of its parent.
+        a[n - 2] = 0;
+        for (int next = n - 3; next >= 0; next--) a[next] = a[(int) a[next]] + 1;
+
+        //Third pass: the nodes at each depth that are not internal nodes are leaves, from the right.
+        int available = 1, used = 0, depth = 0;
+        root = n - 2;
+        int next = n - 1;
+        while (available > 0) {
+            while (root >= 0 && a[root] == depth) {
+                used++;
+                root--;
+            }
+            while (available > used) {
+                a[next--] = depth;
+                available--;
+            }
+            available = 2 * used;
+            depth++;
+            used = 0;
+        }
+
+        //lengths holds the sorted position of each byte until it is replaced by the depth of that position.
+        for (int b = 0; b < maxByte; b++) {
+            if (weightArray[b] != 0) lengths[b] = (int) a[lengths[b]];
+        }
+    }
+
+    /**
+     * Sorts the first n keys of the scratch array with a radix sort, one byte of the weight at a time.
+     * The rest of the scratch array holds the copy of the keys and the counts, and the passes where
+     * all weights have the same byte are skipped, so small weights only need one or two passes.
+     */
+    private static void sort(long[] scratch, int n) {
+        int copy = maxByte, counts = 2 * maxByte;
+        long all = 0;
+        for (int i = 0; i < n; i++) all |= scratch[i];
+        int from = 0, to = copy;
+        for (int shift = 8; shift < 40 && (all >>> shift) != 0; shift += 8) {
+            Arrays.fill(scratch, counts, counts + maxByte, 0);
+            for (int i = 0; i < n; i++) scratch[counts + (int) (scratch[from + i] >>> shift & 0xff)]++;
+            if (scratch[counts + (int) (scratch[from] >>> shift & 0xff)] == n) continue;
+            long sum = 0;
+            for (int d = 0; d < maxByte; d++) {
+                long count = scratch[counts + d];
+                scratch[counts + d] = sum;
+                sum += count;
+            }
+            for (int i = 0; i < n; i++) {
+                long key = scratch[from + i];
+                scratch[to + (int) scratch[counts + (int) (key >>> shift & 0xff)]++] = key;
+            }
+            int t = from;
+            from = to;
+            to = t;
+        }
+        if (from != 0) System.arraycopy(scratch, from, scratch, 0, n);
+    }
+
+    /**
+     * Calculates the optimal code lengths of the weights, where no length is longer than maxLength.
+     * <p>
+     * The bytes are sorted by weight. Each level of the package-merge starts with the sorted bytes,
+     * and the items of the level before are packaged in pairs and merged into it. The 2n - 2 smallest
+     * items of the last level are selected, and the code length of a byte is the number of levels
+     * where it is selected, either on its own or inside a selected package.
+     *
+     * @param weightArray the weight of each byte.
+     * @param maxLength   the maximum code length.
+     * @return the code length of each byte, 0 if the weight of the byte is 0.
+     */
+    static int[] limit(int[] weightArray, int maxLength) {
+        int[] lengths = new int[maxByte];
+        int n = 0;
+        int[] symbols = new int[maxByte];
+        for (int b = 0; b < maxByte; b++) {
+            if (weightArray[b] != 0) symbols[n++] = b;
+        }
+        if (n == 0) return lengths;
+        if (n == 1) {
+            lengths[symbols[0]] = 1;
+            return lengths;
+        }
+        if (maxLength < 1 || maxLength < 31 && (1 << maxLength) < n) {
+            throw new IllegalArgumentException("A code of " + n + " bytes can not have a maximum length of " + maxLength + ".");
+        }
+        maxLength = Math.min(maxLength, n - 1);           //No Huffman code is deeper than n - 1.
+
+        //Sort the bytes by weight, with insertion sort since there are at most 256 of them.
+        for (int i = 1; i < n; i++) {
+            int symbol = symbols[i];
+            int j = i - 1;
+            while (j >= 0 && weightArray[symbols[j]] > weightArray[symbol]) {
+                symbols[j + 1] = symbols[j];
+                j--;
+            }
+            symbols[j + 1] = symbol;
+        }
+
+        //Each level is a list of items sorted by weight, an item is a byte or a package of two items of the level before.
+        long[][] weights = new long[maxLength][];
+        int[][] items = new int[maxLength][];              //The byte of the item, or -1 for a package.
+        int[] sizes = new int[maxLength];
+        weights[0] = new long[n];
+        items[0] = new int[n];
+        for (int i = 0; i < n; i++) {
+            weights[0][i] = weightArray[symbols[i]];
+            items[0][i] = symbols[i];
+        }
+        sizes[0] = n;
+        for (int level = 1; level < maxLength; level++) {
+            int packages = sizes[level - 1] / 2;
+            weights[level] = new long[n + packages];
+            items[level] = new int[n + packages];
+            int leaf = 0, pack = 0, size = 0;
+            while (leaf < n || pack < packages) {
+                long packageWeight = pack < packages
+                        ? weights[level - 1][2 * pack] + weights[level - 1][2 * pack + 1] : Long.MAX_VALUE;
+                if (leaf < n && weightArray[symbols[leaf]] <= packageWeight) {
+                    weights[level][size] = weightArray[symbols[leaf]];
+                    items[level][size++] = symbols[leaf++];
+                } else {
+                    weights[level][size] = packageWeight;
+                    items[level][size++] = -1;
+                    pack++;
+                }
+            }
+            sizes[level] = size;
+        }
+
+        //The selected items of each level are a prefix of the level, the packages in it select a prefix of the level before.
+        int selected = 2 * n - 2;
+        for (int level = maxLength - 1; level >= 0; level--) {
+            int packages = 0;
+            for (int i = 0; i < selected; i++) {
+                if (items[level][i] >= 0) lengths[items[level][i]]++;
+                else packages++;
+            }
+            selected = 2 * packages;
+        }
+        return lengths;
+    }
+
+    /**
+     * Calculates the number of bits of the input coded with the code lengths.
+     *
+     * @param weightArray the weight of each byte.
+     * @param lengths     the code length of each byte.
+     * @return the number of bits.
+     */
+    static long cost(int[] weightArray, int[] lengths) {
+        long bits = 0;
+        for (int b = 0; b < maxByte; b++) bits += (long) weightArray[b] * lengths[b];
+        return bits;
+    }
+
+    /**
+     * The length of the longest code.
+     *
+     * @param lengths the code length of each byte.
+     * @return the maximum length.
+     */
+    static int maxLength(int[] lengths) {
+        int max = 0;
+        for (int length : lengths) max = Math.max(max, length);
+        return max;
+    }
+}
@@ -0,0 +1,238 @@
+package huffman_coding;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded cache of built codes and decode tables, shared by all threads of a codec. Inputs with
+ * nearly the same distribution of bytes get the same code, so the code and the lookup tables of the
+ * decoder do not have to be built again for each of them.
+ * <p>
+ * The codes are found by a signature of the histogram, where -log2 of the probability of each byte is
+ * rounded to buckets of four bits, and the rare bytes share one bucket with the bytes that are not used,
+ * so inputs with nearly the same distribution get the same signature despite the noise of their counts.
+ * A cached code is only used if it has a code for every byte of the input and its cost on the new
+ * histogram is within the tolerance of the estimated optimal cost, which is the entropy of the histogram
+ * plus the redundancy per byte that the code had on the histogram it was built for. The decode tables
+ * are found by the exact code lengths. Both maps evict the least recently used entry when they are full.
+ *
+ * @author Gustaf Rydholm
+ * @author Addi Djikic
+ *         CELTE13
+ *         DD1332
+ *         2016-02-25
+ */
+public class CodeTableCache {
+    private static final int maxByte = 256;             //Maximum size of a byte.
+    private static final double LN2 = Math.log(2);
+    private static final int RARE = 3;                  //The bucket of the bytes with a probability below 1/1024.
+
+    private final int capacity;                         //Maximum number of codes and of decode tables.
+    private final double tolerance;                     //How much larger than optimal a cached code may be, 0.01 is 1 %.
+    private final Map<Key, Entry> codes;                //The codes by the signature of their histogram.
+    private final Map<Key, TableDecoder> decoders;      //The decode tables by their code lengths.
+
+    private final LongAdder codeHits = new LongAdder();         //Codes that were found in the cache.
+    private final LongAdder codeMisses = new LongAdder();       //Codes that had to be built.
+    private final LongAdder decoderHits = new LongAdder();      //Decode tables that were found in the cache.
+    private final LongAdder decoderMisses = new LongAdder();    //Decode tables that had to be built.
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Creates a cache.
+     *
+     * @param capacity  the maximum number of codes, and of decode tables.
+     * @param tolerance how much larger than optimal the output may be with a cached code, 0.01 is 1 %.
+     */
+    public CodeTableCache(int capacity, double tolerance) {
+        if (capacity < 1) throw new IllegalArgumentException("The capacity must be at least 1, not " + capacity + ".");
+        if (!(tolerance >= 0)) throw new IllegalArgumentException("The tolerance can not be " + tolerance + ".");
+        this.capacity = capacity;
+        this.tolerance = tolerance;
+        this.codes = lruMap();
+        this.decoders = lruMap();
+    }
+
+    private <V> Map<Key, V> lruMap() {
+        return new LinkedHashMap<Key, V>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, V> eldest) {
+                if (size() <= capacity) return false;
+                evictions.increment();
+                return true;
+            }
+        };
+    }
+
+    /**
+     * A cached code and how close it was to the entropy of the histogram it was built for.
+     */
+    private static class Entry {
+        final CanonicalCode code;
+        final double redundancy;                        //Bits per byte of the code above the entropy.
+
+        Entry(CanonicalCode code, double redundancy) {
+            this.code = code;
+            this.redundancy = redundancy;
+        }
+    }
+
+    /**
+     * The key of a map, an array of bytes that is compared by its contents.
+     */
+    private static final class Key {
+        private final byte[] bytes;
+        private final int hash;
+
+        Key(byte[] bytes) {
+            this.bytes = bytes;
+            this.hash = Arrays.hashCode(bytes);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key && Arrays.equals(bytes, ((Key) o).bytes);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * ----------------------------------------------------
+     *
+     *               Methods for the codes.
+     *
+     * ----------------------------------------------------
+     */
+
+    /**
+     * Gives a code for the weights, from the cache if a cached code is close enough, otherwise a new
+     * code that is put in the cache.
+     *
+     * @param weightArray the weight of each byte.
+     * @param maxLength   the maximum code length.
+     * @return the code.
+     */
+    CanonicalCode code(int[] weightArray, int maxLength) {
+        long total = 0;
+        for (int weight : weightArray) total += weight;
+        Key key = new Key(signature(weightArray, total, maxLength));
+        double entropy = entropy(weightArray, total);
+
+        Entry entry;
+        synchronized (codes) {
+            entry = codes.get(key);
+        }
+        if (entry != null && entry.code.covers(weightArray) && CodeLengths.cost(weightArray, entry.code.lengths)
+                <= (1 + tolerance) * (entropy + entry.redundancy * total)) {
+            codeHits.increment();
+            return entry.code;
+        }
+        codeMisses.increment();
+        CanonicalCode code = CanonicalCode.fromWeights(weightArray, maxLength);
+        double redundancy = total == 0 ? 0 : (CodeLengths.cost(weightArray, code.lengths) - entropy) / total;
+        synchronized (codes) {
+            codes.put(key, new Entry(code, redundancy));
+        }
+        return code;
+    }
+
+    /**
+     * The signature of a histogram: for each byte the bucket of -log2 of its probability, four bits per
+     * bucket where 6 to 9 bits share a bucket, and the maximum code length in the last byte.
+     */
+    private static byte[] signature(int[] weightArray, long total, int maxLength) {
+        byte[] signature = new byte[maxByte + 1];
+        for (int b = 0; b < maxByte; b++) {
+            int bits = weightArray[b] == 0 ? 64 : 63 - Long.numberOfLeadingZeros(total / weightArray[b]);
+            signature[b] = (byte) Math.min(RARE, (bits + 2) / 4);
+        }
+        signature[maxByte] = (byte) maxLength;
+        return signature;
+    }
+
+    /**
+     * The entropy of the histogram, in bits for all the bytes.
+     */
+    private static double entropy(int[] weightArray, long total) {
+        double bits = 0;
+        for (int weight : weightArray) {
+            if (weight != 0) bits += weight * Math.log((double) total / weight);
+        }
+        return bits / LN2;
+    }
+
+    /**
+     * ----------------------------------------------------
+     *
+     *               Methods for the decode tables.
+     *
+     * ----------------------------------------------------
+     */
+
+    /**
+     * Gives the decode table of the code, from the cache if a code with the same lengths has been
+     * decoded before.
+     *
+     * @param code the code.
+     * @return the decode table.
+     */
+    TableDecoder decoder(CanonicalCode code) {
+        byte[] lengths = new byte[maxByte];
+        for (int b = 0; b < maxByte; b++) lengths[b] = (byte) code.lengths[b];
+        Key key = new Key(lengths);
+        TableDecoder tableDecoder;
+        synchronized (decoders) {
+            tableDecoder = decoders.get(key);
+        }
+        if (tableDecoder != null) {
+            decoderHits.increment();
+            return tableDecoder;
+        }
+        decoderMisses.increment();
+        tableDecoder = code.tableDecoder();
+        synchronized (decoders) {
+            decoders.put(key, tableDecoder);
+        }
+        return tableDecoder;
+    }
+
+    /**
+     * ----------------------------------------------------
+     *
+     *               Methods for the statistics.
+     *
+     * ----------------------------------------------------
+     */
+
+    public long codeHits() {
+        return codeHits.sum();
+    }
+
+    public long codeMisses() {
+        return codeMisses.sum();
+    }
+
+    public long decoderHits() {
+        return decoderHits.sum();
+    }
+
+    public long decoderMisses() {
+        return decoderMisses.sum();
+    }
+
+    public long evictions() {
+        return evictions.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "CodeTableCache: codes " + codeHits() + " hits, " + codeMisses() + " misses, decode tables "
+                + decoderHits() + " hits, " + decoderMisses() + " misses, " + evictions() + " evictions";
+    }
+}
@@ -0,0 +1,240 @@
+package huffman_coding;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Benchmark of each phase of the codec: reading the input with <tt>BitFileReader</tt>, building the
+ * trie with <tt>PriorityQueueHuffman</tt>, building the codes from the trie, calculating the code lengths
+ * directly from the weights, encoding, decoding one stream, decoding four interleaved streams and compressing
+ * with a table trained on the text, which also checks that the other inputs come back unchanged. Each phase is
+ * run over a fixed corpus of text, binary, skewed, uniform random and single symbol inputs of several
+ * sizes. The phases are warmed up before they are measured, and the throughput is reported in MB/s of
+ * original bytes together with the number of bytes allocated per operation.
+ * <p>
+ * Usage: java CodecBenchmark [-sizes 65536,1048576] [-iterations 10]
+ *
+ * @author Gustaf Rydholm
+ * @author Addi Djikic
+ *         CELTE13
+ *         DD1332
+ *         2016-02-25
+ */
+public class CodecBenchmark {
+    private static final String[] CORPUS = {"text", "binary", "skewed", "uniform", "single"};
+    private static final int WARMUP = 5;                //Number of runs before a phase is measured.
+
+    private final int iterations;                       //Number of measured runs of each phase.
+    private final com.sun.management.ThreadMXBean threads;
+    private long blackhole;                             //Keeps the results of the phases alive.
+
+    CodecBenchmark(int iterations) {
+        this.iterations = iterations;
+        this.threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    }
+
+    /**
+     * A phase of the codec, run once per operation.
+     */
+    private interface Phase {
+        long run() throws IOException;
+    }
+
+    /**
+     * Runs the phase and prints the throughput and the allocation of it.
+     *
+     * @param name   the name of the phase.
+     * @param corpus the name of the input.
+     * @param size   number of original bytes the phase handles in each run.
+     * @param phase  the phase.
+     * @throws IOException if the phase could not read or write a file.
+     */
+    private void measure(String name, String corpus, int size, Phase phase) throws IOException {
+        for (int i = 0; i < WARMUP; i++) blackhole += phase.run();
+        long thread = Thread.currentThread().getId();
+        long allocatedBefore = threads.getThreadAllocatedBytes(thread);
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) blackhole += phase.run();
+        long elapsed = System.nanoTime() - start;
+        long allocated = threads.getThreadAllocatedBytes(thread) - allocatedBefore;
+
+        double seconds = elapsed / 1e9;
+        double megabytes = (double) size * iterations / (1024 * 1024);
+        System.out.printf("%-8s %-8s %10d %10.1f MB/s %12.3f us/op %12d B/op %10.1f MB/s alloc%n",
+                name, corpus, size, megabytes / seconds, elapsed / 1e3 / iterations,
+                allocated / iterations, allocated / (1024.0 * 1024.0) / seconds);
+    }
+
+    /**
+     * Runs all phases over one input.
+     *
+     * @param corpus the name of the input.
+     * @param input  the bytes of the input.
+     * @throws IOException if the input could not be written to a temporary file.
+     */
+    void run(String corpus, byte[] input) throws IOException {
+        File file = File.createTempFile("huffman-" + corpus, ".bin");
+        file.deleteOnExit();
+        try (OutputStream out = new FileOutputStream(file)) {
+            out.write(input);
+        }
+        String path = file.getPath();
+        int size = input.length;
+
+        measure("read", corpus, size, () -> new BitFileReader(path).inputLength);
+
+        BitFileReader bitFileReader = new BitFileReader(path);
+        int[] weightArray = bitFileReader.weightArray;
+        measure("trie", corpus, size,
+                () -> HuffmanCoding.buildHuffmanTrie(new PriorityQueueHuffman(weightArray)).getWeight());
+
+        Node root = HuffmanCoding.buildHuffmanTrie(new PriorityQueueHuffman(weightArray));
+        measure("codes", corpus, size, () -> CanonicalCode.fromTrie(root).maxLength);
+        measure("lengths", corpus, size, () -> CanonicalCode.fromWeights(weightArray).maxLength);
+
+        CanonicalCode code = CanonicalCode.fromTrie(root);
+        CountingStream sink = new CountingStream();
+        measure("encode", corpus, size, () -> {
+            sink.count = 0;
+            encode(code, input, sink);
+            return sink.count;
+        });
+
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(size / 2 + 64);
+        encode(code, input, compressed);
+        byte[] bits = compressed.toByteArray();
+        TableDecoder tableDecoder = code.tableDecoder();
+        byte[] output = new byte[size];
+        measure("decode", corpus, size, () -> tableDecoder.decode(bits, 0, bits.length, output, 0, size));
+        if (!Arrays.equals(input, output)) throw new IllegalStateException("The decoded " + corpus + " differs.");
+
+        int streams = InterleavedStreams.DEFAULT_STREAMS;
+        byte[] interleaved = new byte[(int) (((long) size * Math.max(1, code.maxLength) + 7) / 8)
+                + InterleavedStreams.overhead(streams)];
+        int length = InterleavedStreams.encode(code, input, 0, size, streams, interleaved, 0, interleaved.length);
+        Arrays.fill(output, (byte) 0);
+        measure("decode4", corpus, size, () -> {
+            tableDecoder.decodeStreams(interleaved, 0, length, output, 0, size, size, streams);
+            return output[size - 1];
+        });
+        if (!Arrays.equals(input, output)) throw new IllegalStateException("The decoded streams of " + corpus + " differ.");
+
+        //A table trained on text has long codes for the other bytes, so the other inputs are stored or get their own code.
+        byte[] text = generate("text", size);
+        HuffmanCodec shared = new HuffmanCodec(TrainedTable.train(1, Arrays.asList(text)));
+        byte[] payload = new byte[HuffmanCodec.maxCompressedLength(size)];
+        measure("shared", corpus, size, () -> shared.compress(input, 0, size, payload, 0, payload.length));
+        if (!Arrays.equals(input, shared.decompress(shared.compress(input)))) {
+            throw new IllegalStateException("The " + corpus + " compressed with a shared table differs.");
+        }
+        HuffmanCodec narrow = new HuffmanCodec(new TrainedTable(2, CanonicalCode.fromWeights(Histogram.count(text, 0, size))));
+        if (!Arrays.equals(input, narrow.decompress(narrow.compress(input)))) {
+            throw new IllegalStateException("The " + corpus + " compressed with a table without all bytes differs.");
+        }
+    }
+
+    private static void encode(CanonicalCode code, byte[] input, OutputStream out) {
+        BitFileWriter bitFileWriter = new BitFileWriter(out);
+        int[] codes = code.codes;
+        int[] lengths = code.lengths;
+        for (byte b : input) bitFileWriter.writeBits(codes[b & 0xff], lengths[b & 0xff]);
+        bitFileWriter.flush();
+    }
+
+    /**
+     * Generates an input of the corpus. The inputs are the same in every run.
+     *
+     * @param corpus the name of the input.
+     * @param size   number of bytes.
+     * @return the bytes of the input.
+     */
+    static byte[] generate(String corpus, int size) {
+        Random random = new Random(42);
+        byte[] bytes = new byte[size];
+        switch (corpus) {
+            case "text": {
+                String[] words = {"the ", "huffman ", "code ", "of ", "a ", "file ", "is ", "written ",
+                        "to ", "disk\n", "bytes, ", "trie ", "and ", "weight ", "Node ", "0123 "};
+                int i = 0;
+                while (i < size) {
+                    String word = words[(int) Math.abs(random.nextGaussian() * 4) % words.length];
+                    for (int j = 0; j < word.length() && i < size; j++) bytes[i++] = (byte) word.charAt(j);
+                }
+                break;
+            }
+            case "binary":
+                //Little endian integers that grow slowly, like the records of a binary log.
+                for (int i = 0, value = 0; i + 4 <= size; i += 4) {
+                    value += random.nextInt(64);
+                    bytes[i] = (byte) value;
+                    bytes[i + 1] = (byte) (value >>> 8);
+                    bytes[i + 2] = (byte) (value >>> 16);
+                    bytes[i + 3] = (byte) (value >>> 24);
+                }
+                break;
+            case "skewed":
+                for (int i = 0; i < size; i++) {
+                    int b = 0;
+                    while (b < 255 && random.nextInt(4) != 0) b++;
+                    bytes[i] = (byte) b;
+                }
+                break;
+            case "uniform":
+                random.nextBytes(bytes);
+                break;
+            case "single":
+                Arrays.fill(bytes, (byte) 'a');
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown corpus " + corpus);
+        }
+        return bytes;
+    }
+
+    /**
+     * A stream that only counts the bytes written to it.
+     */
+    private static class CountingStream extends OutputStream {
+        long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        int[] sizes = {1 << 16, 1 << 20, 1 << 24};
+        int iterations = 10;
+        for (int arg = 0; arg < args.length; arg++) {
+            if (args[arg].equals("-sizes")) {
+                String[] values = args[++arg].split(",");
+                sizes = new int[values.length];
+                for (int i = 0; i < values.length; i++) sizes[i] = Integer.parseInt(values[i]);
+            } else if (args[arg].equals("-iterations")) {
+                iterations = Integer.parseInt(args[++arg]);
+            } else {
+                System.err.println("Usage: java CodecBenchmark [-sizes 65536,1048576] [-iterations 10]");
+                return;
+            }
+        }
+        CodecBenchmark benchmark = new CodecBenchmark(iterations);
+        System.out.printf("%-8s %-8s %10s %15s %15s %15s %20s%n",
+                "phase", "corpus", "bytes", "throughput", "time", "allocated", "allocation rate");
+        for (int size : sizes) {
+            for (String corpus : CORPUS) benchmark.run(corpus, generate(corpus, size));
+        }
+        if (benchmark.blackhole == 42) System.out.println();
+    }
+}
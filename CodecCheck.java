@@ -0,0 +1,279 @@
+package huffman_coding;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Checks that the codec gives back what it was given and reports damaged input, without a test
+ * framework. Each input is compressed and decompressed by a {@link HuffmanCodec} with several maximum
+ * code lengths and numbers of streams, through arrays, ranges of arrays and direct buffers, with a
+ * cache and with a shared table, and by a {@link BlockEncoder} with and without retraining, where the
+ * {@link BlockDecoder} also decodes ranges of it. The inputs are empty, a single symbol, text, random
+ * bytes and bytes with Fibonacci counts, whose Huffman code is deeper than the maximum code length.
+ * <p>
+ * The code lengths of Fibonacci weights that are deeper than <tt>MAX_CODE_LENGTH</tt> are checked
+ * against the maximum and the Kraft sum, and compressed bytes with a damaged header or payload must
+ * be reported as an <tt>IllegalArgumentException</tt>. The first failed check throws an
+ * <tt>IllegalStateException</tt>, like the checks of {@link CodecBenchmark}.
+ * <p>
+ * Usage: java CodecCheck
+ *
+ * @author Gustaf Rydholm
+ * @author Addi Djikic
+ *         CELTE13
+ *         DD1332
+ *         2016-02-25
+ */
+public class CodecCheck {
+    private static final int[] MAX_LENGTHS = {CanonicalCode.MAX_CODE_LENGTH, 12, 9};
+    private static final int[] STREAMS = {1, 4, InterleavedStreams.MAX_STREAMS};
+    private static final int HEADER_START = 4 + 1 + 1 + 8;   //Magic number, version, flags and number of symbols.
+
+    private int checks;                                 //Number of checks that passed.
+
+    /**
+     * ----------------------------------------------------
+     *
+     *               Methods for the inputs.
+     *
+     * ----------------------------------------------------
+     */
+
+    /**
+     * The inputs of the checks, by name.
+     *
+     * @return the inputs.
+     */
+    static Map<String, byte[]> inputs() {
+        Map<String, byte[]> inputs = new LinkedHashMap<>();
+        inputs.put("empty", new byte[0]);
+        inputs.put("one byte", new byte[] {42});
+        inputs.put("single", CodecBenchmark.generate("single", 10000));
+        inputs.put("text", CodecBenchmark.generate("text", 1 << 18));
+        inputs.put("random", CodecBenchmark.generate("uniform", 1 << 18));
+        inputs.put("fibonacci", fibonacci(26));
+        return inputs;
+    }
+
+    /**
+     * Bytes where byte b occurs as often as the Fibonacci number b + 1, in a random order. The Huffman
+     * code of such counts is as deep as there are bytes.
+     *
+     * @param symbols number of different bytes, at most 46 so the counts fit in an <tt>int</tt>.
+     * @return the bytes.
+     */
+    static byte[] fibonacci(int symbols) {
+        int[] weightArray = fibonacciWeights(symbols);
+        int size = 0;
+        for (int weight : weightArray) size += weight;
+        byte[] bytes = new byte[size];
+        int position = 0;
+        for (int b = 0; b < symbols; b++) {
+            Arrays.fill(bytes, position, position + weightArray[b], (byte) b);
+            position += weightArray[b];
+        }
+        Random random = new Random(42);
+        for (int i = size - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            byte swap = bytes[i];
+            bytes[i] = bytes[j];
+            bytes[j] = swap;
+        }
+        return bytes;
+    }
+
+    private static int[] fibonacciWeights(int symbols) {
+        int[] weightArray = new int[256];
+        int current = 1, next = 1;
+        for (int b = 0; b < symbols; b++) {
+            weightArray[b] = current;
+            int sum = current + next;
+            current = next;
+            next = sum;
+        }
+        return weightArray;
+    }
+
+    /**
+     * ----------------------------------------------------
+     *
+     *               Methods for the checks.
+     *
+     * ----------------------------------------------------
+     */
+
+    private void check(boolean passed, String what) {
+        if (!passed) throw new IllegalStateException("Failed: " + what);
+        checks++;
+    }
+
+    /**
+     * Compresses and decompresses the input with every setting of the codec.
+     *
+     * @param name  the name of the input.
+     * @param input the input.
+     */
+    void roundTrips(String name, byte[] input) {
+        for (int maxLength : MAX_LENGTHS) {
+            for (int streams : STREAMS) {
+                String setting = name + " with " + maxLength + " bits and " + streams + " streams";
+                HuffmanCodec codec = new HuffmanCodec(maxLength, streams);
+                byte[] compressed = codec.compress(input);
+                check(compressed.length <= HuffmanCodec.maxCompressedLength(input.length), setting + " fits its bound");
+                check(HuffmanCodec.decompressedLength(compressed, 0, compressed.length) == input.length, setting + " has its length");
+                check(Arrays.equals(input, codec.decompress(compressed)), setting + " round trip");
+
+                //A range in the middle of larger arrays.
+                byte[] dst = new byte[3 + HuffmanCodec.maxCompressedLength(input.length) + 5];
+                int length = codec.compress(input, 0, input.length, dst, 3, dst.length - 8);
+                byte[] output = new byte[input.length + 7];
+                int count = codec.decompress(dst, 3, length, output, 7, input.length);
+                check(count == input.length && Arrays.equals(input, Arrays.copyOfRange(output, 7, 7 + count)), setting + " ranges");
+
+                //Direct buffers are copied through temporary arrays.
+                ByteBuffer src = ByteBuffer.allocateDirect(input.length).put(input);
+                src.flip();
+                ByteBuffer packed = ByteBuffer.allocateDirect(HuffmanCodec.maxCompressedLength(input.length));
+                codec.compress(src, packed);
+                packed.flip();
+                ByteBuffer unpacked = ByteBuffer.allocateDirect(input.length);
+                codec.decompress(packed, unpacked);
+                unpacked.flip();
+                byte[] fromBuffer = new byte[unpacked.remaining()];
+                unpacked.get(fromBuffer);
+                check(Arrays.equals(input, fromBuffer), setting + " direct buffers");
+            }
+        }
+
+        CodeTableCache cache = new CodeTableCache(4, 0.01);
+        HuffmanCodec cached = new HuffmanCodec(CanonicalCode.MAX_CODE_LENGTH, 1, cache);
+        for (int i = 0; i < 2; i++) check(Arrays.equals(input, cached.decompress(cached.compress(input))), name + " with a cache");
+
+        byte[] text = CodecBenchmark.generate("text", 1 << 16);
+        HuffmanCodec shared = new HuffmanCodec(TrainedTable.train(1, List.of(text)));
+        check(Arrays.equals(input, shared.decompress(shared.compress(input))), name + " with a shared table");
+        //A table without a code for every byte, as a table loaded from a file may be.
+        HuffmanCodec narrow = new HuffmanCodec(new TrainedTable(2, CanonicalCode.fromWeights(Histogram.count(text, 0, text.length))));
+        check(Arrays.equals(input, narrow.decompress(narrow.compress(input))), name + " with a table without all bytes");
+    }
+
+    /**
+     * Compresses the input to a file in blocks, decodes it whole and decodes ranges of it.
+     *
+     * @param name  the name of the input.
+     * @param input the input.
+     * @throws IOException if a temporary file could not be written or read.
+     */
+    void blocks(String name, byte[] input) throws IOException {
+        File file = File.createTempFile("huffman-check", ".bin");
+        File compressed = File.createTempFile("huffman-check", ".huf");
+        file.deleteOnExit();
+        compressed.deleteOnExit();
+        Files.write(file.toPath(), input);
+        for (boolean retrain : new boolean[] {false, true}) {
+            for (int streams : new int[] {1, 4}) {
+                String setting = name + " in blocks with " + streams + " streams" + (retrain ? " and retraining" : "");
+                BlockEncoder blockEncoder = new BlockEncoder(file.getPath(), 1 << 12, 2, CanonicalCode.MAX_CODE_LENGTH, streams);
+                blockEncoder.retrain = retrain;
+                blockEncoder.encode(compressed.getPath());
+                try (BlockDecoder blockDecoder = new BlockDecoder(compressed.getPath())) {
+                    ByteArrayOutputStream output = new ByteArrayOutputStream();
+                    blockDecoder.decodeAll(output, 2);
+                    check(Arrays.equals(input, output.toByteArray()), setting + " round trip");
+                    long[][] ranges = {{0, input.length}, {input.length / 3, input.length / 3}, {input.length / 2, 0},
+                            {Math.max(0, input.length - 5000), Math.min(input.length, 5000)}};
+                    for (long[] range : ranges) {
+                        byte[] expected = Arrays.copyOfRange(input, (int) range[0], (int) (range[0] + range[1]));
+                        check(Arrays.equals(expected, blockDecoder.decodeRange(range[0], range[1])),
+                                setting + " range " + range[0] + "+" + range[1]);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks that the code lengths of weights with a deep Huffman code are limited to the maximum
+     * and still form a prefix code, also when the maximum asked for is above <tt>MAX_CODE_LENGTH</tt>.
+     */
+    void codeLengths() {
+        int[] weightArray = fibonacciWeights(40);
+        for (int maxLength : new int[] {40, CanonicalCode.MAX_CODE_LENGTH, 20, 8}) {
+            CanonicalCode code = CanonicalCode.fromWeights(weightArray, maxLength);
+            check(code.maxLength <= Math.min(maxLength, CanonicalCode.MAX_CODE_LENGTH), "lengths limited to " + maxLength + " bits");
+            check(code.unlimitedMaxLength == 39, "unlimited length of the Fibonacci weights");
+            long kraft = 0;
+            for (int b = 0; b < 256; b++) {
+                if (weightArray[b] != 0) check(code.lengths[b] != 0, "a code for every weight with " + maxLength + " bits");
+                if (code.lengths[b] != 0) kraft += 1L << (CanonicalCode.MAX_CODE_LENGTH - code.lengths[b]);
+            }
+            check(kraft <= 1L << CanonicalCode.MAX_CODE_LENGTH, "Kraft sum of the lengths with " + maxLength + " bits");
+        }
+    }
+
+    /**
+     * Checks that damaged compressed bytes are reported as an <tt>IllegalArgumentException</tt>,
+     * both by the decompression into a new array and into a range of an array.
+     */
+    void damaged() {
+        HuffmanCodec codec = new HuffmanCodec();
+        byte[] input = CodecBenchmark.generate("text", 42000);
+        byte[] compressed = codec.compress(input);
+
+        byte[] bytes = compressed.clone();
+        bytes[0] ^= 1;
+        expectDamaged(codec, "magic number", bytes);
+        bytes = compressed.clone();
+        bytes[4] = 99;
+        expectDamaged(codec, "version", bytes);
+        bytes = compressed.clone();
+        bytes[5] = (byte) 0x80;
+        expectDamaged(codec, "flags", bytes);
+        bytes = compressed.clone();
+        Arrays.fill(bytes, 6, HEADER_START, (byte) 0xff);
+        expectDamaged(codec, "negative number of symbols", bytes);
+        bytes = compressed.clone();
+        bytes[HEADER_START + 32] = 40;
+        expectDamaged(codec, "code length of 40 bits", bytes);
+        bytes = compressed.clone();
+        for (int i = 0; i < 6; i++) bytes[HEADER_START + 32 + i] = 1;
+        expectDamaged(codec, "code lengths that are not a prefix code", bytes);
+        expectDamaged(codec, "truncated header", Arrays.copyOf(compressed, 5));
+        expectDamaged(codec, "truncated payload", Arrays.copyOf(compressed, compressed.length / 2));
+    }
+
+    private void expectDamaged(HuffmanCodec codec, String what, byte[] bytes) {
+        try {
+            codec.decompress(bytes);
+            check(false, "the " + what + " is reported by decompress(byte[])");
+        } catch (IllegalArgumentException e) {
+            checks++;
+        }
+        try {
+            byte[] output = new byte[1 << 16];
+            codec.decompress(bytes, 0, bytes.length, output, 0, output.length);
+            check(false, "the " + what + " is reported by decompress into a range");
+        } catch (IllegalArgumentException e) {
+            checks++;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        CodecCheck codecCheck = new CodecCheck();
+        for (Map.Entry<String, byte[]> input : inputs().entrySet()) {
+            codecCheck.roundTrips(input.getKey(), input.getValue());
+            codecCheck.blocks(input.getKey(), input.getValue());
+        }
+        codecCheck.codeLengths();
+        codecCheck.damaged();
+        System.out.println(codecCheck.checks + " checks passed.");
+    }
+}
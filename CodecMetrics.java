@@ -0,0 +1,356 @@
+package huffman_coding;
+
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * Metrics of the compression and decompression: the time of each phase in nanoseconds, the bytes in
+ * and out, the entropy of the input against the bits per symbol of the code, the longest code and the
+ * bytes allocated by each phase. The metrics can be shared by many threads.
+ * <p>
+ * A phase that runs in one piece is measured with a {@link Span}, which is also committed as a Flight
+ * Recorder event if a recording is running. Phases that are interleaved, such as reading and counting
+ * a chunk at a time, are summed by the caller and added with {@link #add}. {@link #commit()} commits
+ * the totals as one event, and {@link #summaryLine()} gives them as one line of <tt>key=value</tt>.
+ * <p>
+ * The allocation is the number of bytes allocated by the thread during a span, as counted by the
+ * JVM, which does not count the single allocations. It only covers the thread that runs the span, so
+ * the allocation of worker threads, such as those of a {@link BlockEncoder}, is not included.
+ * The summary therefore calls it <tt>caller_allocated_bytes</tt>.
+ *
+ * @author Gustaf Rydholm
+ * @author Addi Djikic
+ *         CELTE13
+ *         DD1332
+ *         2016-02-25
+ */
+public class CodecMetrics {
+    private static final double LN2 = Math.log(2);
+    private static final com.sun.management.ThreadMXBean THREADS = threads();
+
+    public enum Phase {READ, HISTOGRAM, TREE, CODE, ENCODE, DECODE, WRITE}
+
+    private final LongAdder[] nanos = adders();                 //Time of each phase.
+    private final LongAdder[] allocated = adders();             //Bytes allocated by each phase.
+    private final LongAdder bytesIn = new LongAdder();          //Bytes read, compressed or original.
+    private final LongAdder bytesOut = new LongAdder();         //Bytes written, compressed or original.
+    private final LongAdder symbols = new LongAdder();          //Number of symbols in the histograms.
+    private final DoubleAdder entropyBits = new DoubleAdder();  //Entropy of all the symbols of the histograms.
+    private final LongAdder codeBits = new LongAdder();         //Bits of the codes of the symbols of the histograms.
+    private final LongAccumulator maxCodeLength = new LongAccumulator(Math::max, 0);
+
+    private static LongAdder[] adders() {
+        LongAdder[] adders = new LongAdder[Phase.values().length];
+        for (int i = 0; i < adders.length; i++) adders[i] = new LongAdder();
+        return adders;
+    }
+
+    private static com.sun.management.ThreadMXBean threads() {
+        try {
+            java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+            if (bean instanceof com.sun.management.ThreadMXBean) {
+                com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+                if (threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled()) return threads;
+            }
+        } catch (LinkageError | SecurityException e) {
+            //Without the management module the allocation is not measured.
+        }
+        return null;
+    }
+
+    private static long allocatedBytes() {
+        return THREADS == null ? 0 : THREADS.getCurrentThreadAllocatedBytes();
+    }
+
+    /**
+     * ----------------------------------------------------
+     *
+     *               Methods for recording.
+     *
+     * ----------------------------------------------------
+     */
+
+    /**
+     * Starts to measure a phase on the current thread.
+     *
+     * @param phase the phase.
+     * @return the span, which must be stopped on the same thread.
+     */
+    public Span start(Phase phase) {
+        return new Span(phase);
+    }
+
+    /**
+     * A phase that is measured from start to stop.
+     */
+    public final class Span {
+        private final Phase phase;
+        private final PhaseEvent event = new PhaseEvent();
+        private final long startNanos;
+        private final long startAllocated;
+
+        private Span(Phase phase) {
+            this.phase = phase;
+            this.startAllocated = allocatedBytes();
+            event.begin();
+            this.startNanos = System.nanoTime();
+        }
+
+        /**
+         * Stops the span and adds it to the metrics.
+         *
+         * @return the time of the span in nanoseconds.
+         */
+        public long stop() {
+            long time = System.nanoTime() - startNanos;
+            long bytes = allocatedBytes() - startAllocated;
+            event.end();
+            nanos[phase.ordinal()].add(time);
+            allocated[phase.ordinal()].add(bytes);
+            if (event.shouldCommit()) {
+                event.phase = phase.name();
+                event.allocated = bytes;
+                event.commit();
+            }
+            return time;
+        }
+    }
+
+    /**
+     * Adds time to a phase that was measured by the caller.
+     *
+     * @param phase the phase.
+     * @param time  the time in nanoseconds.
+     */
+    void add(Phase phase, long time) {
+        nanos[phase.ordinal()].add(time);
+    }
+
+    void addBytesIn(long bytes) {
+        bytesIn.add(bytes);
+    }
+
+    void addBytesOut(long bytes) {
+        bytesOut.add(bytes);
+    }
+
+    /**
+     * Adds the symbols of a histogram and their entropy.
+     *
+     * @param countArray number of times each byte occurs.
+     */
+    void histogram(long[] countArray) {
+        long total = 0;
+        for (long count : countArray) total += count;
+        double bits = 0;
+        for (long count : countArray) {
+            if (count != 0) bits += count * Math.log((double) total / count);
+        }
+        symbols.add(total);
+        entropyBits.add(bits / LN2);
+    }
+
+    void histogram(int[] countArray) {
+        long[] counts = new long[countArray.length];
+        for (int b = 0; b < counts.length; b++) counts[b] = countArray[b];
+        histogram(counts);
+    }
+
+    /**
+     * Adds the bits of the code for the symbols of a histogram and its longest code.
+     *
+     * @param lengths    the code length of each byte.
+     * @param countArray number of times each byte occurs.
+     */
+    void code(int[] lengths, long[] countArray) {
+        long bits = 0;
+        int longest = 0;
+        for (int b = 0; b < lengths.length; b++) {
+            bits += countArray[b] * lengths[b];
+            if (lengths[b] > longest) longest = lengths[b];
+        }
+        codeBits.add(bits);
+        maxCodeLength.accumulate(longest);
+    }
+
+    /**
+     * Adds the bits of symbols that are stored without a code, 8 per byte, so a stored payload or
+     * block counts in the bits per symbol as what it costs.
+     *
+     * @param bytes number of stored bytes.
+     */
+    void stored(long bytes) {
+        codeBits.add(8 * bytes);
+    }
+
+    /**
+     * Adds the longest code of a code whose symbols are not counted, such as a code that is decoded.
+     *
+     * @param length the length of the longest code.
+     */
+    void maxCodeLength(int length) {
+        maxCodeLength.accumulate(length);
+    }
+
+    void code(int[] lengths, int[] countArray) {
+        long[] counts = new long[countArray.length];
+        for (int b = 0; b < counts.length; b++) counts[b] = countArray[b];
+        code(lengths, counts);
+    }
+
+    /**
+     * ----------------------------------------------------
+     *
+     *               Methods for reading the metrics.
+     *
+     * ----------------------------------------------------
+     */
+
+    public long nanos(Phase phase) {
+        return nanos[phase.ordinal()].sum();
+    }
+
+    public long allocatedBytes(Phase phase) {
+        return allocated[phase.ordinal()].sum();
+    }
+
+    public long bytesIn() {
+        return bytesIn.sum();
+    }
+
+    public long bytesOut() {
+        return bytesOut.sum();
+    }
+
+    public long symbols() {
+        return symbols.sum();
+    }
+
+    /**
+     * The entropy of the histograms.
+     *
+     * @return bits per symbol, 0 without symbols.
+     */
+    public double entropy() {
+        long n = symbols();
+        return n == 0 ? 0 : entropyBits.sum() / n;
+    }
+
+    /**
+     * The bits per symbol of the codes, without the headers.
+     *
+     * @return bits per symbol, 0 without symbols.
+     */
+    public double bitsPerSymbol() {
+        long n = symbols();
+        return n == 0 ? 0 : (double) codeBits.sum() / n;
+    }
+
+    public int maxCodeLength() {
+        return (int) maxCodeLength.get();
+    }
+
+    /**
+     * The line with all metrics, <tt>key=value</tt> separated by spaces, with the times in nanoseconds.
+     * The allocation is only of the threads that ran the spans, not of their worker threads.
+     *
+     * @return the line.
+     */
+    public String summaryLine() {
+        StringBuilder line = new StringBuilder("huffman-metrics");
+        long allocatedBytes = 0;
+        for (Phase phase : Phase.values()) {
+            line.append(' ').append(phase.name().toLowerCase(Locale.ROOT)).append("_ns=").append(nanos(phase));
+            allocatedBytes += allocatedBytes(phase);
+        }
+        line.append(" bytes_in=").append(bytesIn());
+        line.append(" bytes_out=").append(bytesOut());
+        line.append(" symbols=").append(symbols());
+        line.append(String.format(Locale.ROOT, " entropy=%.4f bits_per_symbol=%.4f", entropy(), bitsPerSymbol()));
+        line.append(" max_code_length=").append(maxCodeLength());
+        line.append(" caller_allocated_bytes=").append(allocatedBytes);
+        return line.toString();
+    }
+
+    /**
+     * Commits the totals as a Flight Recorder event, if a recording is running.
+     */
+    public void commit() {
+        SummaryEvent event = new SummaryEvent();
+        if (!event.shouldCommit()) return;
+        event.readNanos = nanos(Phase.READ);
+        event.histogramNanos = nanos(Phase.HISTOGRAM);
+        event.treeNanos = nanos(Phase.TREE);
+        event.codeNanos = nanos(Phase.CODE);
+        event.encodeNanos = nanos(Phase.ENCODE);
+        event.decodeNanos = nanos(Phase.DECODE);
+        event.writeNanos = nanos(Phase.WRITE);
+        event.bytesIn = bytesIn();
+        event.bytesOut = bytesOut();
+        event.symbols = symbols();
+        event.entropy = entropy();
+        event.bitsPerSymbol = bitsPerSymbol();
+        event.maxCodeLength = maxCodeLength();
+        for (Phase phase : Phase.values()) event.allocated += allocatedBytes(phase);
+        event.commit();
+    }
+
+    @Override
+    public String toString() {
+        return summaryLine();
+    }
+
+    /**
+     * ----------------------------------------------------
+     *
+     *               The Flight Recorder events.
+     *
+     * ----------------------------------------------------
+     */
+
+    @Name("huffman_coding.Phase")
+    @Label("Huffman Phase")
+    @Category("Huffman Coding")
+    @Description("One phase of a compression or a decompression")
+    static class PhaseEvent extends Event {
+        @Label("Phase")
+        String phase;
+
+        @Label("Allocated")
+        @DataAmount
+        long allocated;
+    }
+
+    @Name("huffman_coding.Summary")
+    @Label("Huffman Summary")
+    @Category("Huffman Coding")
+    @Description("The totals of a compression or a decompression")
+    static class SummaryEvent extends Event {
+        @Label("Read") @Timespan long readNanos;
+        @Label("Histogram") @Timespan long histogramNanos;
+        @Label("Tree") @Timespan long treeNanos;
+        @Label("Code") @Timespan long codeNanos;
+        @Label("Encode") @Timespan long encodeNanos;
+        @Label("Decode") @Timespan long decodeNanos;
+        @Label("Write") @Timespan long writeNanos;
+        @Label("Bytes In") @DataAmount long bytesIn;
+        @Label("Bytes Out") @DataAmount long bytesOut;
+        @Label("Symbols") long symbols;
+        @Label("Entropy") double entropy;
+        @Label("Bits per Symbol") double bitsPerSymbol;
+        @Label("Max Code Length") int maxCodeLength;
+        @Label("Allocated") @Description("Allocated by the threads that ran the spans, not by their workers")
+        @DataAmount long allocated;
+    }
+}
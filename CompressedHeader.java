@@ -0,0 +1,241 @@
+package huffman_coding;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * The header at the start of a compressed file in the canonical mode. It contains a magic number,
+ * the version of the format, flags for the mode, the number of bytes in the original file and the
+ * code lengths of the canonical Huffman code. The compressed bits follow directly after the header.
+ * <p>
+ * If the file is split into blocks, the header also has the number of original bytes in each block,
+ * and the file ends with a {@link BlockIndex}. If the blocks are split into {@link InterleavedStreams},
+ * the header also has the number of streams. A file compressed with a {@link TrainedTable} has the ID
+ * of the table instead of the code lengths. A file compressed with a {@link ContextModel} has the
+ * model instead of the code lengths, and can not be split into blocks or streams.
+ * <p>
+ * A file where the code saves too little, see {@link StoredBlocks}, is stored raw after a header
+ * without a code. In a file split into blocks each block is stored or coded on its own, and the
+ * block index marks the stored blocks.
+ * <p>
+ * In a file split into blocks where the code may change, the code in the header is used until the
+ * first block that changes it. A block that changes the code starts with the new code lengths, and
+ * the block index marks those blocks, see {@link BlockEncoder}.
+ *
+ * @author Gustaf Rydholm
+ * @author Addi Djikic
+ *         CELTE13
+ *         DD1332
+ *         2016-02-25
+ */
+class CompressedHeader {
+    static final int MAGIC = 0x48554643;            //"HUFC".
+    static final int VERSION = 2;                   //Version of the format.
+    static final int BLOCKS = 1;                    //Flag for a file that is split into blocks.
+    static final int STREAMS = 2;                   //Flag for blocks that are split into interleaved streams.
+    static final int SHARED = 4;                    //Flag for a file that refers to a shared table instead of its own code.
+    static final int CONTEXTS = 8;                  //Flag for a file where the code of each byte is chosen by the byte before it.
+    static final int STORED = 16;                   //Flag for a file that is stored raw, or for blocks that may be stored raw.
+    static final int RETRAIN = 32;                  //Flag for blocks that may start with a new code.
+    private static final int KNOWN_FLAGS = BLOCKS | STREAMS | SHARED | CONTEXTS | STORED | RETRAIN;
+    static final int MAX_LENGTH = 4 + 1 + 1 + 8 + 4 + 1 + 32 + 256;   //Number of bytes in the largest header without contexts.
+    static final int MAX_CONTEXT_LENGTH = 4 + 1 + 1 + 8 + ContextModel.MAX_LENGTH;   //Number of bytes in the largest header with contexts.
+
+    int flags;                                      //The flags of the mode.
+    int blockSize;                                  //Number of original bytes in each block.
+    int streams = 1;                                //Number of interleaved streams in each block.
+    long symbolCount;                               //Number of bytes in the original file.
+    CanonicalCode code;                             //The code of the compressed bytes, null until a shared table is resolved.
+    ContextModel contexts;                          //The codes of the contexts, null if the file has one code.
+    int tableId;                                    //The ID of the shared table.
+    int length;                                     //Number of bytes in the header.
+
+    CompressedHeader(long symbolCount, CanonicalCode code) {
+        this.symbolCount = symbolCount;
+        this.code = code;
+    }
+
+    //Constructor for a file that is split into blocks.
+    CompressedHeader(long symbolCount, CanonicalCode code, int blockSize) {
+        this(symbolCount, code);
+        this.flags = BLOCKS;
+        this.blockSize = blockSize;
+    }
+
+    //Constructor for a file that is compressed with a shared table.
+    CompressedHeader(long symbolCount, TrainedTable table) {
+        this(symbolCount, table.code);
+        this.flags = SHARED;
+        this.tableId = table.id;
+    }
+
+    //Constructor for a file that is compressed with a code per context.
+    CompressedHeader(long symbolCount, ContextModel contexts) {
+        this(symbolCount, (CanonicalCode) null);
+        this.flags = CONTEXTS;
+        this.contexts = contexts;
+    }
+
+    //Constructor for a file that is stored raw, the header has no code.
+    CompressedHeader(long symbolCount) {
+        this(symbolCount, (CanonicalCode) null);
+        this.flags = STORED;
+    }
+
+    boolean hasBlocks() {
+        return (flags & BLOCKS) != 0;
+    }
+
+    /**
+     * Splits each block, or the whole file if it has no blocks, into interleaved streams.
+     *
+     * @param streams number of streams, 1 for a single stream.
+     */
+    void setStreams(int streams) {
+        if (streams < 1 || streams > InterleavedStreams.MAX_STREAMS) {
+            throw new IllegalArgumentException("The number of streams must be between 1 and "
+                    + InterleavedStreams.MAX_STREAMS + ", not " + streams + ".");
+        }
+        this.streams = streams;
+        if (streams > 1) flags |= STREAMS;
+        else flags &= ~STREAMS;
+    }
+
+    boolean hasStreams() {
+        return (flags & STREAMS) != 0;
+    }
+
+    boolean hasSharedTable() {
+        return (flags & SHARED) != 0;
+    }
+
+    boolean hasContexts() {
+        return (flags & CONTEXTS) != 0;
+    }
+
+    /**
+     * Checks if the whole file is stored raw after the header.
+     *
+     * @return true if the file is stored.
+     */
+    boolean isStored() {
+        return flags == STORED;
+    }
+
+    /**
+     * Lets the blocks be stored raw, the block index then marks the stored blocks.
+     */
+    void setStoredBlocks() {
+        if (!hasBlocks()) throw new IllegalStateException("Only a file split into blocks has stored blocks.");
+        flags |= STORED;
+    }
+
+    boolean hasStoredBlocks() {
+        return hasBlocks() && (flags & STORED) != 0;
+    }
+
+    /**
+     * Lets a block start with a new code, the block index then marks those blocks.
+     */
+    void setRetraining() {
+        if (!hasBlocks()) throw new IllegalStateException("Only a file split into blocks can change its code.");
+        flags |= RETRAIN;
+    }
+
+    boolean hasRetraining() {
+        return (flags & RETRAIN) != 0;
+    }
+
+    /**
+     * Writes the header to an array of bytes.
+     *
+     * @return the header as bytes.
+     */
+    byte[] toBytes() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            out.writeByte(flags);
+            out.writeLong(symbolCount);
+            if (hasBlocks()) out.writeInt(blockSize);
+            if (hasStreams()) out.writeByte(streams);
+            if (hasSharedTable()) out.writeInt(tableId);
+            else if (hasContexts()) contexts.write(out);
+            else if (!isStored()) code.write(out);
+            out.flush();
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not write the header.", e);
+        }
+        length = bytes.size();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Checks if the bytes start with the magic number of the header.
+     *
+     * @param bytes the compressed file.
+     * @return true if the file has a header.
+     */
+    static boolean hasHeader(byte[] bytes) {
+        return bytes.length >= 4 && ((bytes[0] & 0xff) << 24 | (bytes[1] & 0xff) << 16
+                | (bytes[2] & 0xff) << 8 | (bytes[3] & 0xff)) == MAGIC;
+    }
+
+    /**
+     * Reads the header at the start of the compressed bytes.
+     *
+     * @param bytes the compressed file.
+     * @return the header.
+     * @throws IOException if the bytes do not start with a valid header.
+     */
+    static CompressedHeader read(byte[] bytes) throws IOException {
+        return read(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Reads the header at the start of a range of the bytes.
+     *
+     * @param bytes  the array with the compressed bytes.
+     * @param offset the index of the first byte of the header.
+     * @param length number of compressed bytes in the array.
+     * @return the header, its length does not include the offset.
+     * @throws IOException if the bytes do not start with a valid header.
+     */
+    static CompressedHeader read(byte[] bytes, int offset, int length) throws IOException {
+        ByteArrayInputStream stream = new ByteArrayInputStream(bytes, offset, length);
+        DataInputStream in = new DataInputStream(stream);
+        if (in.readInt() != MAGIC) throw new IOException("The file is not compressed in the canonical mode.");
+        int version = in.readUnsignedByte();
+        if (version != VERSION) throw new IOException("Unknown version " + version + " of the compressed file.");
+        int flags = in.readUnsignedByte();
+        if ((flags & ~KNOWN_FLAGS) != 0) throw new IOException("Unknown flags " + flags + " of the compressed file.");
+        if ((flags & CONTEXTS) != 0 && flags != CONTEXTS
+                || (flags & STORED) != 0 && flags != STORED && (flags & BLOCKS) == 0
+                || (flags & RETRAIN) != 0 && (flags & (BLOCKS | SHARED)) != BLOCKS) {
+            throw new IOException("The flags " + flags + " of the compressed file are damaged.");
+        }
+        long symbolCount = in.readLong();
+        if (symbolCount < 0) throw new IOException("The number of symbols " + symbolCount + " is damaged.");
+        int blockSize = (flags & BLOCKS) != 0 ? in.readInt() : 0;
+        int streams = (flags & STREAMS) != 0 ? in.readUnsignedByte() : 1;
+        if (streams < 2 && (flags & STREAMS) != 0 || streams > InterleavedStreams.MAX_STREAMS) {
+            throw new IOException("The number of streams " + streams + " is damaged.");
+        }
+        int tableId = (flags & SHARED) != 0 ? in.readInt() : 0;
+        CompressedHeader header;
+        if ((flags & CONTEXTS) != 0) header = new CompressedHeader(symbolCount, ContextModel.read(in));
+        else if (flags == STORED) header = new CompressedHeader(symbolCount);
+        else header = new CompressedHeader(symbolCount, (flags & SHARED) != 0 ? null : CanonicalCode.read(in));
+        header.tableId = tableId;
+        header.flags = flags;
+        header.blockSize = blockSize;
+        header.streams = streams;
+        header.length = length - stream.available();
+        return header;
+    }
+}
@@ -0,0 +1,94 @@
+package huffman_coding;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Compresses a file with a {@link ContextModel}. The file is read twice: once to count how often
+ * each byte follows each byte, and once to code each byte with the table of the byte before it.
+ *
+ * @author Gustaf Rydholm
+ * @author Addi Djikic
+ *         CELTE13
+ *         DD1332
+ *         2016-02-25
+ */
+class ContextEncoder {
+    private static final int maxByte = 256;             //Maximum size of a byte.
+
+    private final String pathToFile;                    //Path to the file that is compressed.
+    private final int maxTables;                        //Most tables of the model.
+    private final int maxLength;                        //The maximum code length.
+
+    private long[][] countArrays;                       //The counts of the bytes after each context.
+    private long inputLength;                           //Number of bytes in the input file.
+    ContextModel contextModel;                          //The model of the file.
+
+    ContextEncoder(String pathToFile, int maxTables, int maxLength) {
+        this.pathToFile = pathToFile;
+        this.maxTables = maxTables;
+        this.maxLength = maxLength;
+    }
+
+    /**
+     * Compresses the file to the output file.
+     *
+     * @param nameOfCompressedFile name of the compressed file.
+     * @throws IOException if a file could not be read or written.
+     */
+    void encode(String nameOfCompressedFile) throws IOException {
+        countContexts();
+        contextModel = ContextModel.build(countArrays, maxTables, maxLength);
+        CanonicalCode[] codeOfContext = contextModel.codeOfContext();
+
+        BitFileWriter bitFileWriter = new BitFileWriter();
+        bitFileWriter.openFile(nameOfCompressedFile);
+        bitFileWriter.writeHeader(new CompressedHeader(inputLength, contextModel).toBytes());
+        try (InputStream is = new FileInputStream(pathToFile)) {
+            byte[] chunk = new byte[BitFileReader.CHUNK_SIZE];
+            int previous = 0, n;
+            while ((n = is.read(chunk)) > 0) {
+                for (int i = 0; i < n; i++) {
+                    int b = chunk[i] & 0xff;
+                    CanonicalCode code = codeOfContext[previous];
+                    bitFileWriter.writeBits(code.codes[b], code.lengths[b]);
+                    previous = b;
+                }
+            }
+        } finally {
+            bitFileWriter.close();
+        }
+    }
+
+    /**
+     * Counts how often each byte follows each byte, the first byte follows the context 0.
+     *
+     * @throws IOException if the file could not be read.
+     */
+    private void countContexts() throws IOException {
+        countArrays = new long[maxByte][maxByte];
+        inputLength = 0;
+        try (InputStream is = new FileInputStream(pathToFile)) {
+            byte[] chunk = new byte[BitFileReader.CHUNK_SIZE];
+            int previous = 0, n;
+            while ((n = is.read(chunk)) > 0) {
+                for (int i = 0; i < n; i++) {
+                    int b = chunk[i] & 0xff;
+                    countArrays[previous][b]++;
+                    previous = b;
+                }
+                inputLength += n;
+            }
+        }
+    }
+
+    /**
+     * Compares the output of the model with one code for the whole file.
+     *
+     * @return a line for the output of the encoder.
+     */
+    String report() {
+        return contextModel.report(countArrays, maxLength);
+    }
+}
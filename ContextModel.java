@@ -0,0 +1,310 @@
+package huffman_coding;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An order-1 model for the canonical mode, where the code of each byte is chosen by the byte before
+ * it. Bytes that follow the same byte often have a much narrower distribution than the whole file,
+ * so the codes get shorter. The first byte of the file has the context 0.
+ * <p>
+ * A table per context would cost up to 288 bytes of code lengths each, so contexts with nearly the
+ * same distribution share a table. The contexts are merged greedily, the smallest first, into the
+ * context that costs the fewest extra bits, as long as the bits saved by one table less are more
+ * than the bits lost because the distributions are merged, and until there are at most
+ * <tt>maxTables</tt> tables. The bits of a distribution are estimated by its entropy.
+ * <p>
+ * In the header the model is the number of tables minus one, one byte with the table of each context,
+ * and the code lengths of each table.
+ *
+ * @author Gustaf Rydholm
+ * @author Addi Djikic
+ *         CELTE13
+ *         DD1332
+ *         2016-02-25
+ */
+class ContextModel {
+    static final int DEFAULT_TABLES = 16;               //Most tables if nothing else is given.
+    static final int MAX_TABLES = 256;                  //One table per context.
+    static final int MAX_LENGTH = 1 + 256 + MAX_TABLES * (32 + 256);   //Number of bytes in the largest model.
+    private static final int maxByte = 256;             //Maximum size of a byte.
+    private static final double LN2 = Math.log(2);
+
+    final int[] tableOfContext;                         //The table of each context.
+    final CanonicalCode[] codes;                        //The code of each table.
+    private TableDecoder[] decoders;                    //The decoder of each context, built when it is first needed.
+
+    ContextModel(int[] tableOfContext, CanonicalCode[] codes) {
+        this.tableOfContext = tableOfContext;
+        this.codes = codes;
+    }
+
+    /**
+     * The code of each context.
+     *
+     * @return the code of each context, contexts that share a table share the code.
+     */
+    CanonicalCode[] codeOfContext() {
+        CanonicalCode[] codeOfContext = new CanonicalCode[maxByte];
+        for (int c = 0; c < maxByte; c++) codeOfContext[c] = codes[tableOfContext[c]];
+        return codeOfContext;
+    }
+
+    /**
+     * ----------------------------------------------------
+     *
+     *               Methods for building the model.
+     *
+     * ----------------------------------------------------
+     */
+
+    /**
+     * A set of contexts that share one table.
+     */
+    private static class Cluster {
+        final long[] countArray = new long[maxByte];    //Number of times each byte follows one of the contexts.
+        final List<Integer> contexts = new ArrayList<>();
+        long total;                                     //Number of bytes that follow one of the contexts.
+        double bits;                                    //Entropy of the bytes plus the bits of the table.
+        boolean settled;                                //True when no merge of the cluster saves bits.
+
+        void update() {
+            double sum = 0;
+            int used = 0;
+            for (long count : countArray) {
+                if (count != 0) {
+                    sum += count * Math.log(count);
+                    used++;
+                }
+            }
+            bits = total == 0 ? 0 : (total * Math.log(total) - sum) / LN2 + tableBits(used);
+        }
+    }
+
+    /**
+     * Number of bits of the code lengths of a table with the number of bytes.
+     */
+    private static double tableBits(int used) {
+        return 8.0 * (32 + used);
+    }
+
+    /**
+     * Builds the model from the number of times each byte follows each context.
+     *
+     * @param countArrays the counts of the bytes after each context, <tt>countArrays[context][byte]</tt>.
+     * @param maxTables   the most tables, between 1 and 256.
+     * @param maxLength   the maximum code length.
+     * @return the model.
+     */
+    static ContextModel build(long[][] countArrays, int maxTables, int maxLength) {
+        if (maxTables < 1 || maxTables > MAX_TABLES) {
+            throw new IllegalArgumentException("The number of tables must be between 1 and " + MAX_TABLES
+                    + ", not " + maxTables + ".");
+        }
+        List<Cluster> clusters = new ArrayList<>();
+        for (int c = 0; c < maxByte; c++) {
+            Cluster cluster = new Cluster();
+            for (int b = 0; b < maxByte; b++) {
+                cluster.countArray[b] = countArrays[c][b];
+                cluster.total += countArrays[c][b];
+            }
+            if (cluster.total == 0) continue;
+            cluster.contexts.add(c);
+            cluster.update();
+            clusters.add(cluster);
+        }
+
+        while (clusters.size() > 1) {
+            //Above the limit every cluster has to be merged, otherwise only the unsettled ones are tried.
+            boolean forced = clusters.size() > maxTables;
+            Cluster smallest = null;
+            for (Cluster cluster : clusters) {
+                if ((forced || !cluster.settled) && (smallest == null || cluster.total < smallest.total)) smallest = cluster;
+            }
+            if (smallest == null) break;
+
+            Cluster best = null;
+            double bestDelta = Double.MAX_VALUE;
+            for (Cluster cluster : clusters) {
+                if (cluster == smallest) continue;
+                double delta = mergedBits(smallest, cluster) - smallest.bits - cluster.bits;
+                if (delta < bestDelta) {
+                    bestDelta = delta;
+                    best = cluster;
+                }
+            }
+            if (forced || bestDelta < 0) {
+                for (int b = 0; b < maxByte; b++) best.countArray[b] += smallest.countArray[b];
+                best.total += smallest.total;
+                best.contexts.addAll(smallest.contexts);
+                best.update();
+                best.settled = false;
+                clusters.remove(smallest);
+            } else {
+                smallest.settled = true;
+            }
+        }
+
+        //Contexts that never occur use the first table, so every context has a code.
+        int[] tableOfContext = new int[maxByte];
+        CanonicalCode[] codes = new CanonicalCode[Math.max(1, clusters.size())];
+        if (clusters.isEmpty()) codes[0] = CanonicalCode.fromWeights(new int[maxByte], maxLength);
+        for (int t = 0; t < clusters.size(); t++) {
+            Cluster cluster = clusters.get(t);
+            codes[t] = CanonicalCode.fromWeights(BitFileReader.toWeights(cluster.countArray), maxLength);
+            for (int c : cluster.contexts) tableOfContext[c] = t;
+        }
+        return new ContextModel(tableOfContext, codes);
+    }
+
+    /**
+     * The bits of the two clusters if they share one table.
+     */
+    private static double mergedBits(Cluster a, Cluster b) {
+        long total = a.total + b.total;
+        double sum = 0;
+        int used = 0;
+        for (int s = 0; s < maxByte; s++) {
+            long count = a.countArray[s] + b.countArray[s];
+            if (count != 0) {
+                sum += count * Math.log(count);
+                used++;
+            }
+        }
+        return (total * Math.log(total) - sum) / LN2 + tableBits(used);
+    }
+
+    /**
+     * ----------------------------------------------------
+     *
+     *               Methods for the header.
+     *
+     * ----------------------------------------------------
+     */
+
+    /**
+     * Writes the number of tables minus one, the table of each context and the code lengths of the tables.
+     *
+     * @param out the stream of the header.
+     * @throws IOException if the header could not be written.
+     */
+    void write(DataOutputStream out) throws IOException {
+        out.writeByte(codes.length - 1);
+        for (int c = 0; c < maxByte; c++) out.writeByte(tableOfContext[c]);
+        for (CanonicalCode code : codes) code.write(out);
+    }
+
+    /**
+     * Reads the model written by {@link #write(DataOutputStream)}.
+     *
+     * @param in the stream of the header.
+     * @return the model.
+     * @throws IOException if the header could not be read or is damaged.
+     */
+    static ContextModel read(DataInputStream in) throws IOException {
+        int tables = in.readUnsignedByte() + 1;
+        int[] tableOfContext = new int[maxByte];
+        for (int c = 0; c < maxByte; c++) {
+            tableOfContext[c] = in.readUnsignedByte();
+            if (tableOfContext[c] >= tables) throw new IOException("The table of context " + c + " is damaged.");
+        }
+        CanonicalCode[] codes = new CanonicalCode[tables];
+        for (int t = 0; t < tables; t++) codes[t] = CanonicalCode.read(in);
+        return new ContextModel(tableOfContext, codes);
+    }
+
+    /**
+     * Number of bytes of the model in the header.
+     *
+     * @return the length of the model.
+     */
+    int headerLength() {
+        int length = 1 + maxByte;
+        for (CanonicalCode code : codes) {
+            length += 32;
+            for (int b = 0; b < maxByte; b++) {
+                if (code.lengths[b] != 0) length++;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * ----------------------------------------------------
+     *
+     *               Methods for decoding.
+     *
+     * ----------------------------------------------------
+     */
+
+    /**
+     * Decodes symbols where the code of each symbol is chosen by the symbol before it.
+     *
+     * @param in          the compressed bytes.
+     * @param bitPosition the position of the first bit to decode.
+     * @param end         the index after the last compressed byte in the input.
+     * @param out         the array for the decoded bytes.
+     * @param outPosition the index of the first decoded byte in out.
+     * @param count       number of symbols to decode.
+     * @param previous    the byte before the first symbol, 0 at the start of the file.
+     * @return the bit position after the last decoded symbol.
+     */
+    long decode(byte[] in, long bitPosition, int end, byte[] out, int outPosition, int count, int previous) {
+        if (decoders == null) {
+            TableDecoder[] tableDecoders = new TableDecoder[codes.length];
+            for (int t = 0; t < codes.length; t++) tableDecoders[t] = codes[t].tableDecoder();
+            TableDecoder[] byContext = new TableDecoder[maxByte];
+            for (int c = 0; c < maxByte; c++) byContext[c] = tableDecoders[tableOfContext[c]];
+            decoders = byContext;
+        }
+        return TableDecoder.decodeContexts(decoders, previous, in, bitPosition, end, out, outPosition, count);
+    }
+
+    /**
+     * ----------------------------------------------------
+     *
+     *               Methods for the report.
+     *
+     * ----------------------------------------------------
+     */
+
+    /**
+     * Compares the size of the output with the model to the size with one code for the whole file,
+     * so it can be seen if the context mode pays off for the input.
+     *
+     * @param countArrays the counts of the bytes after each context.
+     * @param maxLength   the maximum code length of the order-0 code.
+     * @return a line for the output of the encoder.
+     */
+    String report(long[][] countArrays, int maxLength) {
+        long[] order0 = new long[maxByte];
+        long total = 0, bits = 0;
+        for (int c = 0; c < maxByte; c++) {
+            int[] lengths = codes[tableOfContext[c]].lengths;
+            for (int b = 0; b < maxByte; b++) {
+                order0[b] += countArrays[c][b];
+                total += countArrays[c][b];
+                bits += countArrays[c][b] * lengths[b];
+            }
+        }
+        CanonicalCode code = CanonicalCode.fromWeights(BitFileReader.toWeights(order0), maxLength);
+        long order0Bits = 0;
+        int order0Table = 32;
+        for (int b = 0; b < maxByte; b++) {
+            order0Bits += order0[b] * code.lengths[b];
+            if (code.lengths[b] != 0) order0Table++;
+        }
+        long size = headerLength() + (bits + 7) / 8;
+        long order0Size = order0Table + (order0Bits + 7) / 8;
+        double perByte = total == 0 ? 0 : (double) bits / total;
+        double order0PerByte = total == 0 ? 0 : (double) order0Bits / total;
+        return String.format("Context mode: %d tables in %d bytes, %.3f bits per byte, %d bytes (ratio %.3f). "
+                        + "Order 0: table in %d bytes, %.3f bits per byte, %d bytes (ratio %.3f). The context mode %s.",
+                codes.length, headerLength(), perByte, size, total == 0 ? 0 : (double) size / total,
+                order0Table, order0PerByte, order0Size, total == 0 ? 0 : (double) order0Size / total,
+                size < order0Size ? "saves " + (order0Size - size) + " bytes" : "costs " + (size - order0Size) + " bytes more");
+    }
+}
@@ -1,6 +1,16 @@
 package huffman_coding;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * @author Gustaf Rydholm
@@ -11,31 +21,198 @@ import java.io.IOException;
  */
 public class Decoder {
 
+    private static final String USAGE = "Usage: java Decoder -path to the compressed file- [-path to the root-]"
+            + " -name of the decompressed file- [-bitwise] [-range -first byte- -number of bytes-]\n"
+            + "       java Decoder -tables -directory of the shared tables- -path to the compressed file- -name of the decompressed file-\n"
+            + "       add -metrics to print the time of each phase and the other metrics\n"
+            + "       java Decoder -member -name of the member- -path to the archive- -name of the decompressed file-\n"
+            + "       java Decoder -list -path to the archive-\n"
+            + "       java Decoder -adaptive -compressed file, or - for stdin- -decompressed file, or - for stdout-\n"
+            + "       java Decoder -pipeline -compressed file, or - for stdin- -decompressed file, or - for stdout-";
+
     BitFileReader bitFileReader;
     HuffmanCoding huffmanCoding;
 
     Decoder(String[] args) throws IOException {
-        final long startTime = System.currentTimeMillis();
+        final long startTime = System.nanoTime();
+        String nameOfDecodedFile = null;
+        PrintStream console = System.out;               //Where the time is printed, not stdout if the output is there.
         try {
-            String pathToCompression = args[0];
-            String pathToTrieRoot = args[1];
-            String nameOfDecodedFile = args[2];
+            //The optional flag -bitwise decodes by walking the trie bit by bit instead of with the lookup table,
+            //-range decodes only a range of the original file, -adaptive decodes a stream of adaptive Huffman frames,
+            //-tables is the directory of the shared tables that a compressed file may refer to by ID,
+            //-member extracts one file of an archive and -list prints the files of an archive,
+            //-metrics prints the time of each phase and the other metrics as one line of key=value,
+            //-pipeline decodes frames with the reading, the decoding and the writing on three threads.
+            boolean bitwise = false, adaptive = false, list = false, pipeline = false;
+            CodecMetrics metrics = null;
+            String member = null;
+            File tableDirectory = null;
+            long from = -1, length = 0;
+            List<String> paths = new ArrayList<>();
+            for (int arg = 0; arg < args.length; arg++) {
+                if (args[arg].equals("-bitwise")) bitwise = true;
+                else if (args[arg].equals("-adaptive")) adaptive = true;
+                else if (args[arg].equals("-pipeline")) pipeline = true;
+                else if (args[arg].equals("-tables")) tableDirectory = new File(args[++arg]);
+                else if (args[arg].equals("-list")) list = true;
+                else if (args[arg].equals("-metrics")) metrics = new CodecMetrics();
+                else if (args[arg].equals("-member")) member = args[++arg];
+                else if (args[arg].equals("-range")) {
+                    from = Long.parseLong(args[++arg]);
+                    length = Long.parseLong(args[++arg]);
+                } else paths.add(args[arg]);
+            }
+            //A file compressed in the canonical mode has no trie file, so it is given with two paths.
+            boolean canonical = paths.size() == 2;
+            String pathToCompression = paths.get(0);
+            nameOfDecodedFile = list ? null : paths.get(canonical ? 1 : 2);
             try {
-                bitFileReader = new BitFileReader(pathToCompression, pathToTrieRoot);
-                huffmanCoding = new HuffmanCoding(bitFileReader, nameOfDecodedFile);
+                if (list) {
+                    for (Archive.Member m : Archive.list(pathToCompression)) {
+                        console.println(m.name + "\t" + m.length + "\t" + m.compressedLength);
+                    }
+                } else if (member != null) {
+                    Archive.extract(pathToCompression, member, nameOfDecodedFile);
+                } else if (adaptive) {
+                    if (nameOfDecodedFile.equals("-")) console = System.err;
+                    decodeAdaptive(pathToCompression, nameOfDecodedFile);
+                    nameOfDecodedFile = null;
+                } else if (pipeline) {
+                    if (nameOfDecodedFile.equals("-")) console = System.err;
+                    decodePipelined(pathToCompression, nameOfDecodedFile, metrics);
+                    if (nameOfDecodedFile.equals("-")) nameOfDecodedFile = null;
+                } else if (canonical) {
+                    decodeCanonical(pathToCompression, nameOfDecodedFile, from, length, tableDirectory, metrics);
+                } else {
+                    CodecMetrics.Span span = metrics == null ? null : metrics.start(CodecMetrics.Phase.READ);
+                    bitFileReader = new BitFileReader(pathToCompression, paths.get(1));
+                    if (span != null) {
+                        span.stop();
+                        metrics.addBytesIn(bitFileReader.compressedBytes.length);
+                    }
+                    bitFileReader.metrics = metrics;
+                    huffmanCoding = new HuffmanCoding(bitFileReader, nameOfDecodedFile, bitwise);
+                }
+                if (metrics != null) {
+                    metrics.commit();
+                    console.println(metrics.summaryLine());
+                }
             } catch (IOException e) {
-                System.err.println("Usage: java Decoder -path to the compressed file- -path to the root- -name of the decompressed file-");
+                System.err.println(USAGE);
                 System.err.println("Could not open file.");
                 e.printStackTrace();
             }
-        } catch (ArrayIndexOutOfBoundsException e) {
-            System.err.println("Usage: java Decoder -path to the compressed file- -path to the root- -name of the decompressed file-");
+        } catch (IndexOutOfBoundsException | NumberFormatException e) {
+            System.err.println(USAGE);
             e.printStackTrace();
         }
 
-        final long stopTime = System.currentTimeMillis();
+        final long stopTime = System.nanoTime();
         long elapsedTime = stopTime - startTime;
-        System.out.println("Time to decompress: " + elapsedTime / 1000 + " s");
+        console.println("Time to decompress: " + elapsedTime / 1000000 + " ms");
+        if (nameOfDecodedFile != null && elapsedTime > 0) {
+            double megabytes = new File(nameOfDecodedFile).length() / (1024.0 * 1024.0);
+            console.printf("Throughput: %.1f MB/s%n", megabytes / (elapsedTime / 1e9));
+        }
+    }
+
+    /**
+     * Decodes a file compressed in the canonical mode. A file split into blocks is decoded on all cores,
+     * a range is decoded from only the blocks that contain it.
+     *
+     * @param pathToCompression path to the compressed file.
+     * @param nameOfDecodedFile name of the decompressed file.
+     * @param from              first byte of the range, or -1 for the whole file.
+     * @param length            number of bytes in the range.
+     * @param tableDirectory    the directory of the shared tables, or null.
+     * @param metrics           the metrics, or null.
+     * @throws IOException if a file could not be read or written.
+     */
+    private void decodeCanonical(String pathToCompression, String nameOfDecodedFile, long from, long length,
+                                 File tableDirectory, CodecMetrics metrics) throws IOException {
+        try (BlockDecoder blockDecoder = new BlockDecoder(pathToCompression, tableDirectory)) {
+            if (from >= 0) {
+                try (OutputStream out = new FileOutputStream(nameOfDecodedFile)) {
+                    out.write(blockDecoder.decodeRange(from, length));
+                }
+                return;
+            }
+            if (blockDecoder.header.hasBlocks()) {
+                //The blocks are read and written by the same tasks that decode them, so they are one phase.
+                CodecMetrics.Span span = metrics == null ? null : metrics.start(CodecMetrics.Phase.DECODE);
+                try (OutputStream out = new BufferedOutputStream(new FileOutputStream(nameOfDecodedFile), 1 << 16)) {
+                    blockDecoder.decodeAll(out, Runtime.getRuntime().availableProcessors());
+                }
+                if (span != null) {
+                    span.stop();
+                    metrics.addBytesIn(new File(pathToCompression).length());
+                    metrics.addBytesOut(blockDecoder.header.symbolCount);
+                }
+                return;
+            }
+        }
+        bitFileReader = new BitFileReader(pathToCompression, true, metrics);
+        TrainedTable.resolve(bitFileReader.header, tableDirectory);
+        huffmanCoding = new HuffmanCoding(bitFileReader, nameOfDecodedFile, false);
+    }
+
+    /**
+     * Decompresses a file or stdin that was compressed with adaptive Huffman coding,
+     * each frame is written as soon as it is decoded.
+     *
+     * @param pathToCompression the compressed file, or - for stdin.
+     * @param nameOfDecodedFile the decompressed file, or - for stdout.
+     * @throws IOException if the input could not be read or the output written.
+     */
+    private static void decodeAdaptive(String pathToCompression, String nameOfDecodedFile) throws IOException {
+        InputStream in = pathToCompression.equals("-") ? System.in
+                : new BufferedInputStream(new FileInputStream(pathToCompression));
+        OutputStream out = nameOfDecodedFile.equals("-") ? System.out : new FileOutputStream(nameOfDecodedFile);
+        try {
+            AdaptiveHuffman.decode(in, out);
+        } finally {
+            if (in != System.in) in.close();
+            if (out != System.out) out.close();
+        }
+    }
+
+    /**
+     * Decompresses a file or stdin of frames, with the reading, the decoding and the writing on three
+     * threads that run at the same time.
+     *
+     * @param pathToCompression the compressed file, or - for stdin.
+     * @param nameOfDecodedFile the decompressed file, or - for stdout.
+     * @param metrics           the metrics, or null.
+     * @throws IOException if the input could not be read, a frame is damaged or the output could not be written.
+     */
+    private static void decodePipelined(String pathToCompression, String nameOfDecodedFile, CodecMetrics metrics)
+            throws IOException {
+        InputStream in = pathToCompression.equals("-") ? System.in
+                : new BufferedInputStream(new FileInputStream(pathToCompression));
+        OutputStream out = nameOfDecodedFile.equals("-") ? System.out : new FileOutputStream(nameOfDecodedFile);
+        try {
+            Pipeline.decode(in, out, Pipeline.DEFAULT_DEPTH, new HuffmanCodec(), metrics);
+        } finally {
+            if (in != System.in) in.close();
+            if (out != System.out) out.close();
+        }
+    }
+
+    /**
+     * Decodes a range of the original file from a file compressed in the canonical mode.
+     * Only the blocks that contain the range are read.
+     *
+     * @param pathToCompression path to the compressed file.
+     * @param from              position of the first byte in the original file.
+     * @param length            number of bytes to decode.
+     * @return the bytes of the range.
+     * @throws IOException if the compressed file could not be read.
+     */
+    static byte[] decodeRange(String pathToCompression, long from, long length) throws IOException {
+        try (BlockDecoder blockDecoder = new BlockDecoder(pathToCompression)) {
+            return blockDecoder.decodeRange(from, length);
+        }
     }
 
     public static void main(String[] args) throws IOException {
@@ -1,6 +1,16 @@
 package huffman_coding;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
 
 /**
  * @author Gustaf Rydholm
@@ -17,25 +27,224 @@ public class Encoder {
 
     Encoder(String[] args) {
         final long startTime = System.currentTimeMillis();
+        PrintStream console = System.out;               //Where the time is printed, not stdout if the output is there.
 
         try {
-            String pathToString = args[0];               //Name of the file that's going to be compressed.
+            //The optional flag -canonical writes the code lengths in the header instead of the trie file,
+            //-parallel splits the file into blocks that are compressed on all cores,
+            //-maxlen limits the length of the canonical codes, -streams splits each block into interleaved
+            //streams that are decoded together, -adaptive compresses in one pass with adaptive Huffman coding,
+            //where - is stdin or stdout. -train saves a shared table trained on sample files, and -table
+            //compresses with a saved table so the compressed file only refers to its ID. -context chooses the
+            //code of each byte by the byte before it, with at most the given number of tables. -archive
+            //compresses every file in a directory tree into one archive. -metrics prints the time of each phase
+            //and the other metrics as one line of key=value. -pipeline reads, compresses and writes frames on
+            //three threads at the same time, where - is stdin or stdout. -retrain splits the file into small
+            //blocks that get a new code where the bytes change, if the new code saves more than it takes.
+            boolean canonical = false, parallel = false, adaptive = false, train = false, archive = false;
+            boolean pipeline = false, retrain = false;
+            CodecMetrics metrics = null;
+            int maxLength = CanonicalCode.MAX_CODE_LENGTH;
+            int streams = 1;
+            int contextTables = 0;
+            File tableDirectory = null;
+            int tableId = -1;
+            int arg = 0;
+            for (; args[arg].startsWith("-") && args[arg].length() > 1; arg++) {
+                if (args[arg].equals("-canonical")) canonical = true;
+                else if (args[arg].equals("-parallel")) parallel = true;
+                else if (args[arg].equals("-adaptive")) adaptive = true;
+                else if (args[arg].equals("-archive")) archive = true;
+                else if (args[arg].equals("-pipeline")) pipeline = true;
+                else if (args[arg].equals("-retrain")) retrain = true;
+                else if (args[arg].equals("-metrics")) metrics = new CodecMetrics();
+                else if (args[arg].equals("-maxlen")) {
+                    maxLength = Integer.parseInt(args[++arg]);
+                    canonical = true;
+                } else if (args[arg].equals("-train")) {
+                    train = true;
+                    tableId = Integer.parseInt(args[++arg]);
+                    tableDirectory = new File(args[++arg]);
+                } else if (args[arg].equals("-table")) {
+                    tableDirectory = new File(args[++arg]);
+                    tableId = Integer.parseInt(args[++arg]);
+                } else if (args[arg].equals("-context")) {
+                    contextTables = Integer.parseInt(args[++arg]);
+                    canonical = true;
+                } else if (args[arg].equals("-streams")) {
+                    streams = Integer.parseInt(args[++arg]);
+                    canonical = true;
+                } else throw new IllegalArgumentException("Unknown option " + args[arg]);
+            }
+            if (maxLength < 1 || maxLength > CanonicalCode.MAX_CODE_LENGTH) {
+                throw new IllegalArgumentException("The maximum code length must be between 1 and "
+                        + CanonicalCode.MAX_CODE_LENGTH + ", not " + maxLength + ".");
+            }
+            if (contextTables > 0 && (parallel || streams > 1 || retrain || tableDirectory != null)) {
+                //The context mode has one code per context for the whole file, it has no blocks and no shared table.
+                throw new IllegalArgumentException("-context can not be combined with -parallel, -streams, -retrain or -table.");
+            }
+            String pathToString = args[arg];                 //Name of the file that's going to be compressed.
             try {
-                bitFileReader = new BitFileReader(pathToString);
-                priorityQueueHuffman = new PriorityQueueHuffman(bitFileReader);
-                huffmanCoding = new HuffmanCoding(bitFileReader, priorityQueueHuffman);
+                if (train) {
+                    train(tableId, tableDirectory, Arrays.copyOfRange(args, arg, args.length));
+                } else if (tableDirectory != null) {
+                    compressWithTable(pathToString, TrainedTable.load(tableDirectory, tableId));
+                } else if (archive) {
+                    archive(pathToString, arg + 1 < args.length ? args[arg + 1] : "archive.bin");
+                } else if (contextTables > 0) {
+                    ContextEncoder contextEncoder = new ContextEncoder(pathToString, contextTables, maxLength);
+                    contextEncoder.encode("compressed.bin");
+                    System.out.println(contextEncoder.report());
+                } else if (adaptive) {
+                    String nameOfCompressedFile = arg + 1 < args.length ? args[arg + 1] : "compressed.bin";
+                    if (nameOfCompressedFile.equals("-")) console = System.err;
+                    compressAdaptive(pathToString, nameOfCompressedFile);
+                } else if (pipeline) {
+                    String nameOfCompressedFile = arg + 1 < args.length ? args[arg + 1] : "compressed.bin";
+                    if (nameOfCompressedFile.equals("-")) console = System.err;
+                    compressPipelined(pathToString, nameOfCompressedFile, maxLength, metrics);
+                } else {
+                    CanonicalCode canonicalCode;
+                    if (parallel || streams > 1 || retrain) {
+                        //The streams are written per block, so they use the blocks even on one thread.
+                        int threads = parallel || retrain ? Runtime.getRuntime().availableProcessors() : 1;
+                        BlockEncoder blockEncoder = new BlockEncoder(pathToString, retrain ? BlockEncoder.RETRAIN_BLOCK_SIZE
+                                : BlockEncoder.DEFAULT_BLOCK_SIZE, threads, maxLength, streams);
+                        blockEncoder.metrics = metrics;
+                        blockEncoder.retrain = retrain;
+                        blockEncoder.encode("compressed.bin");
+                        canonicalCode = blockEncoder.canonicalCode;
+                        if (blockEncoder.storedCount > 0) {
+                            System.out.println(blockEncoder.storedCount + " blocks are stored raw, the code saves less than "
+                                    + (int) (StoredBlocks.MIN_SAVING * 100) + " % of them.");
+                        }
+                        if (retrain) {
+                            System.out.println(blockEncoder.retrainedCount + " of " + blockEncoder.blockCount()
+                                    + " blocks start with a new code.");
+                        }
+                    } else {
+                        bitFileReader = new BitFileReader(pathToString, metrics);
+                        if (!canonical) {
+                            CodecMetrics.Span span = metrics == null ? null : metrics.start(CodecMetrics.Phase.TREE);
+                            priorityQueueHuffman = new PriorityQueueHuffman(bitFileReader);
+                            if (span != null) span.stop();
+                        }
+                        huffmanCoding = new HuffmanCoding(bitFileReader, priorityQueueHuffman, canonical, maxLength);
+                        canonicalCode = huffmanCoding.getCanonicalCode();
+                        if (huffmanCoding.isStored()) {
+                            System.out.println("The file is stored raw, the code saves less than "
+                                    + (int) (StoredBlocks.MIN_SAVING * 100) + " % of it.");
+                        }
+                    }
+                    if (canonicalCode != null && canonicalCode.limitReport() != null) {
+                        System.out.println(canonicalCode.limitReport());
+                    }
+                }
+                if (metrics != null) {
+                    metrics.commit();
+                    console.println(metrics.summaryLine());
+                }
             } catch (IOException e) {
                 System.err.println("Could not open file.");
                 e.printStackTrace();
             }
-        } catch (ArrayIndexOutOfBoundsException e) {
-            System.err.println("Usage: java Decoder -name of file to compress-");
+        } catch (ArrayIndexOutOfBoundsException | IllegalArgumentException e) {
+            System.err.println("Usage: java Encoder [-canonical] [-parallel] [-retrain] [-maxlen -bits-] [-streams -count-] [-context -tables-] [-metrics] -name of file to compress-");
+            System.err.println("       java Encoder -train -table ID- -directory of the tables- -sample files-");
+            System.err.println("       java Encoder -table -directory of the tables- -table ID- -name of file to compress-");
+            System.err.println("       java Encoder -archive -directory to compress- [-name of the archive-]");
+            System.err.println("       java Encoder -adaptive -name of file to compress, or - for stdin- [-name of compressed file, or - for stdout-]");
+            System.err.println("       java Encoder -pipeline [-maxlen -bits-] [-metrics] -name of file to compress, or - for stdin- [-name of compressed file, or - for stdout-]");
             e.printStackTrace();
         }
 
         final long stopTime = System.currentTimeMillis();
         long elapsedTime = stopTime - startTime;
-        System.out.println("Time to compile: " + elapsedTime / 1000 + " s");
+        console.println("Time to compile: " + elapsedTime / 1000 + " s");
+    }
+
+    /**
+     * Compresses a file or stdin with adaptive Huffman coding, the output is written a frame at a time.
+     *
+     * @param pathToString         the file to compress, or - for stdin.
+     * @param nameOfCompressedFile the compressed file, or - for stdout.
+     * @throws IOException if the input could not be read or the output written.
+     */
+    private static void compressAdaptive(String pathToString, String nameOfCompressedFile) throws IOException {
+        InputStream in = pathToString.equals("-") ? System.in : new FileInputStream(pathToString);
+        OutputStream out = nameOfCompressedFile.equals("-") ? System.out : new FileOutputStream(nameOfCompressedFile);
+        try {
+            AdaptiveHuffman.encode(in, out);
+        } finally {
+            if (in != System.in) in.close();
+            if (out != System.out) out.close();
+        }
+    }
+
+    /**
+     * Compresses a file or stdin in frames, with the reading, the compression and the writing on three
+     * threads that run at the same time.
+     *
+     * @param pathToString         the file to compress, or - for stdin.
+     * @param nameOfCompressedFile the compressed file, or - for stdout.
+     * @param maxLength            the maximum code length.
+     * @param metrics              the metrics, or null.
+     * @throws IOException if the input could not be read or the output written.
+     */
+    private static void compressPipelined(String pathToString, String nameOfCompressedFile, int maxLength,
+                                          CodecMetrics metrics) throws IOException {
+        InputStream in = pathToString.equals("-") ? System.in : new FileInputStream(pathToString);
+        OutputStream out = nameOfCompressedFile.equals("-") ? System.out : new FileOutputStream(nameOfCompressedFile);
+        try {
+            Pipeline.encode(in, out, Pipeline.DEFAULT_FRAME_SIZE, Pipeline.DEFAULT_DEPTH, new HuffmanCodec(maxLength), metrics);
+        } finally {
+            if (in != System.in) in.close();
+            if (out != System.out) out.close();
+        }
+    }
+
+    /**
+     * Compresses every file in the directory tree into one archive, on all cores.
+     *
+     * @param directory     the directory to compress.
+     * @param nameOfArchive name of the archive.
+     * @throws IOException if a file could not be read or the archive written.
+     */
+    private static void archive(String directory, String nameOfArchive) throws IOException {
+        List<Archive.Member> members = Archive.create(Paths.get(directory), nameOfArchive,
+                Runtime.getRuntime().availableProcessors());
+        long length = 0;
+        for (Archive.Member member : members) length += member.length;
+        System.out.println("Archived " + members.size() + " files of " + length + " bytes to " + nameOfArchive
+                + " of " + new File(nameOfArchive).length() + " bytes.");
+    }
+
+    /**
+     * Trains a shared table on the sample files and saves it in the directory.
+     *
+     * @param tableId        the ID of the table.
+     * @param tableDirectory the directory of the tables.
+     * @param samples        the paths to the sample files.
+     * @throws IOException if a sample could not be read or the table written.
+     */
+    private static void train(int tableId, File tableDirectory, String[] samples) throws IOException {
+        TrainedTable table = TrainedTable.train(tableId, samples);
+        table.save(tableDirectory);
+        System.out.println("Saved table " + tableId + " trained on " + samples.length + " files to "
+                + TrainedTable.file(tableDirectory, tableId));
+    }
+
+    /**
+     * Compresses a file with a shared table, the compressed file has no code of its own.
+     *
+     * @param pathToString the file to compress.
+     * @param table        the shared table.
+     * @throws IOException if the file could not be read or written.
+     */
+    private static void compressWithTable(String pathToString, TrainedTable table) throws IOException {
+        byte[] compressed = new HuffmanCodec(table).compress(Files.readAllBytes(Paths.get(pathToString)));
+        Files.write(Paths.get("compressed.bin"), compressed);
     }
 
     public static void main(String[] args) throws IOException {
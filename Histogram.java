@@ -0,0 +1,141 @@
+package huffman_coding;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Counts how often each byte occurs. A single array of counters is slow on data where the same byte
+ * repeats, since each increment has to wait for the store of the one before it. The bytes are therefore
+ * read eight at a time and spread over <tt>STRIPES</tt> arrays of counters, so the increments of
+ * neighbouring bytes go to different counters, and the arrays are added together at the end. A large
+ * input is split into slices that are counted on several threads with fork/join.
+ *
+ * @author Gustaf Rydholm
+ * @author Addi Djikic
+ *         CELTE13
+ *         DD1332
+ *         2016-02-25
+ */
+class Histogram {
+    static final int STRIPES = 4;                       //Number of arrays of counters.
+    static final int MIN_SLICE = 1 << 22;               //Smallest number of bytes counted by one task.
+    private static final int maxByte = 256;             //Maximum size of a byte.
+    private static final VarHandle LONG = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private Histogram() {
+    }
+
+    /**
+     * Counts the bytes of a range of an array.
+     *
+     * @param bytes  the array.
+     * @param offset the index of the first byte.
+     * @param length number of bytes.
+     * @return number of times each byte occurs.
+     */
+    static int[] count(byte[] bytes, int offset, int length) {
+        int[] stripes = new int[STRIPES * maxByte];
+        int i = offset, end = offset + length;
+        for (; i <= end - 8; i += 8) countWord(stripes, (long) LONG.get(bytes, i));
+        for (; i < end; i++) stripes[bytes[i] & 0xff]++;
+        return merge(stripes);
+    }
+
+    /**
+     * Counts the bytes of a range of a buffer, such as a mapped region of a file. The bytes are read
+     * with the absolute get methods, so the position of the buffer is not changed.
+     *
+     * @param bytes the buffer.
+     * @param from  the index of the first byte.
+     * @param to    the index after the last byte.
+     * @return number of times each byte occurs.
+     */
+    static int[] count(ByteBuffer bytes, int from, int to) {
+        int[] stripes = new int[STRIPES * maxByte];
+        int i = from;
+        for (; i <= to - 8; i += 8) countWord(stripes, bytes.getLong(i));
+        for (; i < to; i++) stripes[bytes.get(i) & 0xff]++;
+        return merge(stripes);
+    }
+
+    /**
+     * Counts the bytes of a buffer from index 0 to its limit on up to <tt>threads</tt> threads and adds
+     * them to the counts.
+     *
+     * @param bytes      the buffer.
+     * @param countArray number of times each byte occurs, added to.
+     * @param threads    number of slices the buffer may be split into.
+     */
+    static void count(ByteBuffer bytes, long[] countArray, int threads) {
+        int limit = bytes.limit();
+        int slice = (int) Math.max(MIN_SLICE, ((long) limit + threads - 1) / Math.max(1, threads));
+        if (limit <= slice) add(countArray, count(bytes, 0, limit));
+        else add(countArray, ForkJoinPool.commonPool().invoke(new CountTask(bytes, 0, limit, slice)));
+    }
+
+    /**
+     * Adds counts to other counts.
+     *
+     * @param countArray the counts that are added to.
+     * @param counts     the counts that are added.
+     */
+    static void add(long[] countArray, int[] counts) {
+        for (int b = 0; b < maxByte; b++) countArray[b] += counts[b];
+    }
+
+    /**
+     * Counts the eight bytes of a word, two in each array of counters.
+     */
+    private static void countWord(int[] stripes, long word) {
+        stripes[(int) word & 0xff]++;
+        stripes[maxByte + ((int) (word >>> 8) & 0xff)]++;
+        stripes[2 * maxByte + ((int) (word >>> 16) & 0xff)]++;
+        stripes[3 * maxByte + ((int) (word >>> 24) & 0xff)]++;
+        stripes[(int) (word >>> 32) & 0xff]++;
+        stripes[maxByte + ((int) (word >>> 40) & 0xff)]++;
+        stripes[2 * maxByte + ((int) (word >>> 48) & 0xff)]++;
+        stripes[3 * maxByte + (int) (word >>> 56)]++;
+    }
+
+    private static int[] merge(int[] stripes) {
+        int[] counts = new int[maxByte];
+        for (int s = 0; s < STRIPES; s++) {
+            for (int b = 0; b < maxByte; b++) counts[b] += stripes[s * maxByte + b];
+        }
+        return counts;
+    }
+
+    /**
+     * Counts a range of a buffer, the range is split in two until it is at most one slice. The counts
+     * of a range fit in an <tt>int</tt>, since a buffer has at most <tt>Integer.MAX_VALUE</tt> bytes.
+     */
+    private static class CountTask extends RecursiveTask<int[]> {
+        private static final long serialVersionUID = 1L;
+        private final ByteBuffer bytes;
+        private final int from, to;                     //The range, to is not included.
+        private final int slice;                        //Largest range counted without a split.
+
+        CountTask(ByteBuffer bytes, int from, int to, int slice) {
+            this.bytes = bytes;
+            this.from = from;
+            this.to = to;
+            this.slice = slice;
+        }
+
+        @Override
+        protected int[] compute() {
+            if (to - from <= slice) return count(bytes, from, to);
+            int middle = from + (to - from) / 2;
+            CountTask left = new CountTask(bytes, from, middle, slice);
+            left.fork();
+            int[] counts = new CountTask(bytes, middle, to, slice).compute();
+            int[] leftCounts = left.join();
+            for (int b = 0; b < maxByte; b++) counts[b] += leftCounts[b];
+            return counts;
+        }
+    }
+}
@@ -0,0 +1,425 @@
+package huffman_coding;
+
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Compresses and decompresses bytes in memory, without any files. The compressed bytes have the same
+ * format as a file compressed in the canonical mode: a {@link CompressedHeader} followed by the bits
+ * of the canonical Huffman code, so they can also be written to disk and read by the <tt>Decoder</tt>.
+ * A payload where the code saves too little, see {@link StoredBlocks}, is stored raw after the header.
+ * <p>
+ * A codec has no mutable state, so one codec can be shared by any number of threads. Every method
+ * that writes to an array or a buffer of the caller writes directly into it, which lets a caller
+ * keep one destination per thread and reuse it for every call.
+ *
+ * @author Gustaf Rydholm
+ * @author Addi Djikic
+ *         CELTE13
+ *         DD1332
+ *         2016-02-25
+ */
+public class HuffmanCodec {
+    private static final int maxByte = 256;         //Maximum size of a byte.
+
+    private final int maxLength;                    //The maximum length of the codes.
+    private final int streams;                      //Number of interleaved streams, 1 for a single stream.
+    private final TrainedTable table;               //The shared table, or null if each payload has its own code.
+    private final CodeTableCache cache;             //The cache of codes and decode tables, or null.
+    private final CodecMetrics metrics;             //The metrics of every call, or null.
+
+    public HuffmanCodec() {
+        this(CanonicalCode.MAX_CODE_LENGTH);
+    }
+
+    public HuffmanCodec(int maxLength) {
+        this(maxLength, 1);
+    }
+
+    /**
+     * Creates a codec whose codes are at most maxLength bits, see {@link CodeLengths#limit(int[], int)},
+     * and whose output is split into a number of {@link InterleavedStreams} that are decoded together.
+     * Every codec can decompress the output of any other codec.
+     *
+     * @param maxLength the maximum code length, at most 32.
+     * @param streams   number of streams, at most 16, or 1 for a single stream.
+     */
+    public HuffmanCodec(int maxLength, int streams) {
+        this(maxLength, streams, null);
+    }
+
+    /**
+     * Creates a codec that takes the codes and the decode tables from a cache, so payloads with
+     * nearly the same distribution of bytes share them. The cache may be shared by several codecs.
+     *
+     * @param maxLength the maximum code length, at most 32.
+     * @param streams   number of streams, at most 16, or 1 for a single stream.
+     * @param cache     the cache, or null to build the code of every payload.
+     */
+    public HuffmanCodec(int maxLength, int streams, CodeTableCache cache) {
+        if (maxLength < 1 || maxLength > CanonicalCode.MAX_CODE_LENGTH) {
+            throw new IllegalArgumentException("The maximum code length must be between 1 and "
+                    + CanonicalCode.MAX_CODE_LENGTH + ", not " + maxLength + ".");
+        }
+        if (streams < 1 || streams > InterleavedStreams.MAX_STREAMS) {
+            throw new IllegalArgumentException("The number of streams must be between 1 and "
+                    + InterleavedStreams.MAX_STREAMS + ", not " + streams + ".");
+        }
+        this.maxLength = maxLength;
+        this.streams = streams;
+        this.table = null;
+        this.cache = cache;
+        this.metrics = null;
+    }
+
+    /**
+     * Creates a codec that compresses every payload with a shared table. The payloads only have the
+     * ID of the table in their header, and no code is built for them. Only the histogram is counted,
+     * so a payload that the table makes less than {@link StoredBlocks#MIN_SAVING} smaller is stored
+     * instead, and a payload with a byte that the table has no code for gets its own code. The codec
+     * can decompress payloads with the same table and payloads that have their own code.
+     *
+     * @param table the shared table.
+     */
+    public HuffmanCodec(TrainedTable table) {
+        this.maxLength = CanonicalCode.MAX_CODE_LENGTH;
+        this.streams = 1;
+        this.table = table;
+        this.cache = null;
+        this.metrics = null;
+    }
+
+    private HuffmanCodec(HuffmanCodec codec, CodecMetrics metrics) {
+        this.maxLength = codec.maxLength;
+        this.streams = codec.streams;
+        this.table = codec.table;
+        this.cache = codec.cache;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Gives a codec with the same settings that records every call in the metrics.
+     *
+     * @param metrics the metrics, or null for none.
+     * @return the new codec.
+     */
+    public HuffmanCodec withMetrics(CodecMetrics metrics) {
+        return new HuffmanCodec(this, metrics);
+    }
+
+    /**
+     * The largest number of compressed bytes of an input. A Huffman code is never longer in total
+     * than the 8 bits of each byte, since a code of 8 bits for every byte is also a prefix code. The
+     * codes of a shared table may be up to <tt>table.code.maxLength</tt> bits for bytes that were rare
+     * in its samples, but a payload that they would make larger is stored, so the bound holds for it too.
+     * The header, the jump table and the padding of the streams come in addition.
+     *
+     * @param length number of bytes in the input.
+     * @return the size of a destination that always has room for the compressed bytes.
+     */
+    public static int maxCompressedLength(int length) {
+        long max = (long) CompressedHeader.MAX_LENGTH + length + 8
+                + InterleavedStreams.overhead(InterleavedStreams.MAX_STREAMS);
+        if (max > Integer.MAX_VALUE) throw new IllegalArgumentException("The input of " + length + " bytes is too large.");
+        return (int) max;
+    }
+
+    /**
+     * ----------------------------------------------------
+     *
+     *               Methods for compressing.
+     *
+     * ----------------------------------------------------
+     */
+
+    /**
+     * Compresses the bytes.
+     *
+     * @param src the bytes to compress.
+     * @return the compressed bytes.
+     */
+    public byte[] compress(byte[] src) {
+        byte[] dst = new byte[maxCompressedLength(src.length)];
+        int length = compress(src, 0, src.length, dst, 0, dst.length);
+        return Arrays.copyOf(dst, length);
+    }
+
+    /**
+     * Compresses a range of the bytes into the destination.
+     *
+     * @param src       the array with the bytes to compress.
+     * @param srcOffset the index of the first byte to compress.
+     * @param srcLength number of bytes to compress.
+     * @param dst       the array for the compressed bytes.
+     * @param dstOffset the index of the first compressed byte in dst.
+     * @param dstLength number of bytes that may be written to dst.
+     * @return number of compressed bytes.
+     * @throws BufferOverflowException if the compressed bytes do not fit, see {@link #maxCompressedLength(int)}.
+     */
+    public int compress(byte[] src, int srcOffset, int srcLength, byte[] dst, int dstOffset, int dstLength) {
+        checkRange(src, srcOffset, srcLength);
+        checkRange(dst, dstOffset, dstLength);
+        CodecMetrics.Span span = start(CodecMetrics.Phase.HISTOGRAM);
+        int[] weightArray = Histogram.count(src, srcOffset, srcLength);
+        stop(span);
+        if (metrics != null) metrics.histogram(weightArray);
+        //A table that is loaded from a file may have no code for some of the bytes.
+        boolean shared = table != null && table.code.covers(weightArray);
+        CanonicalCode canonicalCode;
+        long overhead;
+        if (shared) {
+            canonicalCode = table.code;
+            //The ID of the table is only in the coded payload.
+            overhead = 4;
+        } else {
+            span = start(CodecMetrics.Phase.CODE);
+            if (srcLength == 0) canonicalCode = new CanonicalCode(new int[maxByte]);
+            else if (cache != null) canonicalCode = cache.code(weightArray, maxLength);
+            else canonicalCode = CanonicalCode.fromWeights(weightArray, maxLength);
+            stop(span);
+            //The code lengths and the jump table are only in the coded payload.
+            overhead = canonicalCode.writtenLength() + (streams > 1 ? InterleavedStreams.overhead(streams) : 0);
+        }
+        long bits = CodeLengths.cost(weightArray, canonicalCode.lengths);
+        if (StoredBlocks.store(bits, overhead, srcLength)) return store(src, srcOffset, srcLength, dst, dstOffset, dstLength);
+        if (metrics != null) metrics.code(canonicalCode.lengths, weightArray);
+        CompressedHeader header;
+        if (shared) header = new CompressedHeader(srcLength, table);
+        else header = new CompressedHeader(srcLength, canonicalCode);
+        header.setStreams(streams);
+        span = start(CodecMetrics.Phase.ENCODE);
+        BitFileWriter bitFileWriter = new BitFileWriter(dst, dstOffset, dstLength);
+        bitFileWriter.writeHeader(header.toBytes());
+        int length;
+        if (streams > 1) {
+            int position = bitFileWriter.position();
+            length = position - dstOffset + InterleavedStreams.encode(canonicalCode, src, srcOffset, srcLength, streams,
+                    dst, position, dstOffset + dstLength - position);
+        } else {
+            int[] codes = canonicalCode.codes;
+            int[] lengths = canonicalCode.lengths;
+            for (int i = srcOffset; i < srcOffset + srcLength; i++) {
+                bitFileWriter.writeBits(codes[src[i] & 0xff], lengths[src[i] & 0xff]);
+            }
+            bitFileWriter.flush();
+            length = bitFileWriter.position() - dstOffset;
+        }
+        if (span != null) {
+            span.stop();
+            metrics.addBytesIn(srcLength);
+            metrics.addBytesOut(length);
+        }
+        return length;
+    }
+
+    /**
+     * Writes a header without a code followed by the original bytes, for a payload where the code
+     * saves too little.
+     */
+    private int store(byte[] src, int srcOffset, int srcLength, byte[] dst, int dstOffset, int dstLength) {
+        byte[] header = new CompressedHeader(srcLength).toBytes();
+        if (header.length + srcLength > dstLength) throw new BufferOverflowException();
+        System.arraycopy(header, 0, dst, dstOffset, header.length);
+        System.arraycopy(src, srcOffset, dst, dstOffset + header.length, srcLength);
+        if (metrics != null) {
+            metrics.stored(srcLength);
+            metrics.addBytesIn(srcLength);
+            metrics.addBytesOut(header.length + srcLength);
+        }
+        return header.length + srcLength;
+    }
+
+    /**
+     * Compresses the remaining bytes of src into dst. The position of src is moved to its limit and
+     * the position of dst is moved past the compressed bytes. Buffers without an array, such as
+     * direct buffers, are copied to and from a temporary array.
+     *
+     * @param src the bytes to compress.
+     * @param dst the buffer for the compressed bytes.
+     * @return number of compressed bytes.
+     * @throws BufferOverflowException if the compressed bytes do not fit in the remaining bytes of dst.
+     */
+    public int compress(ByteBuffer src, ByteBuffer dst) {
+        byte[] in;
+        int inOffset;
+        int inLength = src.remaining();
+        if (src.hasArray()) {
+            in = src.array();
+            inOffset = src.arrayOffset() + src.position();
+        } else {
+            in = new byte[inLength];
+            inOffset = 0;
+            src.duplicate().get(in);
+        }
+        int length;
+        if (dst.hasArray()) {
+            length = compress(in, inOffset, inLength, dst.array(), dst.arrayOffset() + dst.position(), dst.remaining());
+            dst.position(dst.position() + length);
+        } else {
+            byte[] out = new byte[Math.min(dst.remaining(), maxCompressedLength(inLength))];
+            length = compress(in, inOffset, inLength, out, 0, out.length);
+            dst.put(out, 0, length);
+        }
+        src.position(src.limit());
+        return length;
+    }
+
+    /**
+     * ----------------------------------------------------
+     *
+     *               Methods for decompressing.
+     *
+     * ----------------------------------------------------
+     */
+
+    /**
+     * Reads the number of original bytes from the header of the compressed bytes, so the caller
+     * can size the destination before it decompresses them.
+     *
+     * @param src       the array with the compressed bytes.
+     * @param srcOffset the index of the first compressed byte.
+     * @param srcLength number of compressed bytes.
+     * @return number of original bytes.
+     */
+    public static long decompressedLength(byte[] src, int srcOffset, int srcLength) {
+        checkRange(src, srcOffset, srcLength);
+        return readHeader(src, srcOffset, srcLength).symbolCount;
+    }
+
+    /**
+     * Decompresses the bytes.
+     *
+     * @param src the compressed bytes.
+     * @return the original bytes.
+     */
+    public byte[] decompress(byte[] src) {
+        long count = decompressedLength(src, 0, src.length);
+        if (count > Integer.MAX_VALUE) throw new IllegalArgumentException("The " + count + " original bytes do not fit in an array.");
+        byte[] dst = new byte[(int) count];
+        decompress(src, 0, src.length, dst, 0, dst.length);
+        return dst;
+    }
+
+    /**
+     * Decompresses a range of the compressed bytes into the destination.
+     *
+     * @param src       the array with the compressed bytes.
+     * @param srcOffset the index of the first compressed byte.
+     * @param srcLength number of compressed bytes.
+     * @param dst       the array for the original bytes.
+     * @param dstOffset the index of the first original byte in dst.
+     * @param dstLength number of bytes that may be written to dst.
+     * @return number of original bytes.
+     * @throws BufferOverflowException if the original bytes do not fit.
+     */
+    public int decompress(byte[] src, int srcOffset, int srcLength, byte[] dst, int dstOffset, int dstLength) {
+        checkRange(src, srcOffset, srcLength);
+        checkRange(dst, dstOffset, dstLength);
+        CompressedHeader header = readHeader(src, srcOffset, srcLength);
+        if (header.symbolCount > dstLength) throw new BufferOverflowException();
+        int count = (int) header.symbolCount;
+        if (header.isStored()) {
+            if (header.length + header.symbolCount > srcLength) throw new IllegalArgumentException("The stored bytes are damaged.");
+            System.arraycopy(src, srcOffset + header.length, dst, dstOffset, count);
+            return count;
+        }
+        CodecMetrics.Span span = start(CodecMetrics.Phase.CODE);
+        TableDecoder tableDecoder;
+        if (header.hasSharedTable()) {
+            if (table == null || table.id != header.tableId) {
+                throw new IllegalArgumentException("The bytes are compressed with the shared table " + header.tableId + ".");
+            }
+            tableDecoder = table.tableDecoder;
+        } else {
+            tableDecoder = cache != null ? cache.decoder(header.code) : header.code.tableDecoder();
+        }
+        stop(span);
+        span = start(CodecMetrics.Phase.DECODE);
+        try {
+            if (header.hasStreams()) {
+                tableDecoder.decodeStreams(src, srcOffset + header.length, srcOffset + srcLength, dst, dstOffset,
+                        count, count, header.streams);
+            } else {
+                tableDecoder.decode(src, (long) (srcOffset + header.length) * 8, srcOffset + srcLength, dst, dstOffset, count);
+            }
+        } catch (IllegalStateException e) {
+            throw new IllegalArgumentException("The compressed bytes are damaged.", e);
+        }
+        if (span != null) {
+            span.stop();
+            metrics.addBytesIn(srcLength);
+            metrics.addBytesOut(count);
+        }
+        return count;
+    }
+
+    /**
+     * Decompresses the remaining bytes of src into dst. The position of src is moved to its limit and
+     * the position of dst is moved past the original bytes. Buffers without an array, such as
+     * direct buffers, are copied to and from a temporary array.
+     *
+     * @param src the compressed bytes.
+     * @param dst the buffer for the original bytes.
+     * @return number of original bytes.
+     * @throws BufferOverflowException if the original bytes do not fit in the remaining bytes of dst.
+     */
+    public int decompress(ByteBuffer src, ByteBuffer dst) {
+        byte[] in;
+        int inOffset;
+        int inLength = src.remaining();
+        if (src.hasArray()) {
+            in = src.array();
+            inOffset = src.arrayOffset() + src.position();
+        } else {
+            in = new byte[inLength];
+            inOffset = 0;
+            src.duplicate().get(in);
+        }
+        int length;
+        if (dst.hasArray()) {
+            length = decompress(in, inOffset, inLength, dst.array(), dst.arrayOffset() + dst.position(), dst.remaining());
+            dst.position(dst.position() + length);
+        } else {
+            long count = decompressedLength(in, inOffset, inLength);
+            if (count > dst.remaining()) throw new BufferOverflowException();
+            byte[] out = new byte[(int) count];
+            length = decompress(in, inOffset, inLength, out, 0, out.length);
+            dst.put(out, 0, length);
+        }
+        src.position(src.limit());
+        return length;
+    }
+
+    private static CompressedHeader readHeader(byte[] src, int srcOffset, int srcLength) {
+        CompressedHeader header;
+        try {
+            header = CompressedHeader.read(src, srcOffset, srcLength);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("The bytes are not compressed by a HuffmanCodec.", e);
+        }
+        if (header.hasBlocks()) {
+            throw new IllegalArgumentException("The bytes are split into blocks, use a BlockDecoder for them.");
+        }
+        if (header.hasContexts()) {
+            throw new IllegalArgumentException("The bytes have a code per context, use a BlockDecoder for them.");
+        }
+        return header;
+    }
+
+    private CodecMetrics.Span start(CodecMetrics.Phase phase) {
+        return metrics == null ? null : metrics.start(phase);
+    }
+
+    private static void stop(CodecMetrics.Span span) {
+        if (span != null) span.stop();
+    }
+
+    private static void checkRange(byte[] bytes, int offset, int length) {
+        if (offset < 0 || length < 0 || offset > bytes.length - length) {
+            throw new IndexOutOfBoundsException("The range " + offset + " + " + length
+                    + " is outside the array of " + bytes.length + " bytes.");
+        }
+    }
+}
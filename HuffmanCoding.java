@@ -1,178 +1,465 @@
-package huffman_coding;
-
-import java.util.HashMap;
-import java.util.Map;
-
-/**
- * @author Gustaf Rydholm
- * @author Addi Djikic
- *         CELTE13
- *         DD1332
- *         2016-02-25
- */
-public class HuffmanCoding {
-    private PriorityQueueHuffman priorityQueueHuffman;
-    private BitFileReader bitFileReader;
-    private BitFileWriter bitFileWriter;
-
-    private Node root, nextNode;                            //Node for the Huffman trie.
-    private Map<Character, Integer> decodingMap;            //The key is a byte and the value is the current weight of the byte.
-    private Map<Character, String> pathMap;                 //The key is the byte and the value is the path in the trie to the byte.
-    private String nameOfDecodedFile;                       //Name for the decoded file.
-
-
-    //Constructor for compressing a file
-    HuffmanCoding(BitFileReader bitFileReader, PriorityQueueHuffman priorityQueueHuffman) {
-        this.priorityQueueHuffman = priorityQueueHuffman;
-        this.bitFileReader = bitFileReader;
-        this.bitFileWriter = new BitFileWriter();
-        pathMap = new HashMap<>();
-        buildHuffmanTrie();
-        buildCodes();
-        writeCompressedOutput();
-    }
-
-
-    //Constructor for decompressing a file.
-    HuffmanCoding(BitFileReader bitFileReader, String nameOfDecodedFile) {
-        this.bitFileReader = bitFileReader;
-        this.bitFileWriter = new BitFileWriter();
-        this.root = bitFileReader.trieRoot;
-        this.nameOfDecodedFile = nameOfDecodedFile;
-        decodingMap = new HashMap<>();
-        decodeHuffmanTrie();
-    }
-
-    /**
-     * ----------------------------------------------------
-     *
-     *               Methods for building the trie.
-     *
-     * ----------------------------------------------------
-     */
-
-    /**
-     * Builds the Huffman trie via a priority queue, where the final element in the queue
-     * is the root of the trie.
-     */
-    private void buildHuffmanTrie() {
-        Node i, j;
-        int n = priorityQueueHuffman.cardinalOfPQ() - 1, newWeight;
-        for (int k = 0; k < n; k++) {
-            i = priorityQueueHuffman.pop();
-            j = priorityQueueHuffman.pop();
-
-            newWeight = i.getWeight() + j.getWeight();
-            Node newNode = new Node(newWeight);
-            newNode.right = i;
-            newNode.left = j;
-
-            priorityQueueHuffman.push(newNode);
-        }
-        root = priorityQueueHuffman.pop();
-        bitFileWriter.writeTrie(root);
-    }
-
-    /**
-     * Initialization of the code building for each byte.
-     */
-    private void buildCodes() {
-        if (root == null) return;
-        buildCodes(root, "");
-    }
-
-    /**
-     * Recursive method that build the Huffman coding for each byte in the file.
-     *
-     * @param node        a node in the Huffman trie.
-     * @param currentPath the current calculated path taken in the trie.
-     */
-    private void buildCodes(Node node, String currentPath) {
-        if (node == null) return;
-
-        //If a leaf is found, the byte and the path is put as key and value in the pathMap.
-        if (node.isLeaf()) {
-            pathMap.put(node.getSymbol(), currentPath);
-
-        }
-
-        else {
-            buildCodes(node.left, currentPath + "0");
-            buildCodes(node.right, currentPath + "1");
-        }
-    }
-
-    /**
-     * Writes the Huffman coding of each byte to a file called compressed.bin.
-     */
-    private void writeCompressedOutput() {
-        bitFileWriter.openFile("compressed.bin");
-        for (char b : bitFileReader.inputArray) {
-            //Takes each bytes in the input array and gets it's Huffman coding from the pathMap.
-            String pathInTrie = pathMap.get(b);
-            bitFileWriter.writePath(pathInTrie);
-        }
-        bitFileWriter.close();
-    }
-
-    /**
-     * ----------------------------------------------------
-     *
-     *               Methods for decoding the trie.
-     *
-     * ----------------------------------------------------
-     */
-
-
-    /**
-     * Decodes the Huffman trie by going down through it bit by bit of each byte from the input file.
-     * Open and closes the file which contains the decompressed bytes.
-     */
-    private void decodeHuffmanTrie() {
-        bitFileWriter.openFile(nameOfDecodedFile);
-        nextNode = root;
-        for (char b : bitFileReader.inputArray) {
-            //A string containing 1' s and 0's so we can go through the Huffman trie (the byte represented as a binary string).
-            String binaryStr = bitFileReader.mapOfTriePath.get(b);
-            for (int i = 0; i < binaryStr.length(); i++) {
-
-                if (binaryStr.charAt(i) == '0') {
-                    nextNode = nextNode.left;
-                    checkNode(nextNode);
-                }
-
-                else if (binaryStr.charAt(i) == '1') {
-                    nextNode = nextNode.right;
-                    checkNode(nextNode);
-                }
-            }
-        }
-        bitFileWriter.closeFile();
-    }
-
-    /**
-     * Checks if the current node is a leaf in the Huffman trie, if so the byte (symbol) in the node
-     * written to the decompressed file.
-     *
-     * @param node the current node in the Huffman trie.
-     */
-    private void checkNode(Node node) {
-        int currentWeight = 0; //Initilize the current weight of the byte.
-
-        if (node.isLeaf()) {
-
-            char key = node.getSymbol(); //The byte of the node, which serves a key in the decodingMap
-
-            //Checks key is not in the map. Otherwise the current weight of the byte is compared to the total weight of the byte.
-            //This is done in order to prevent that a byte is printed out more times than it should.
-            if (!decodingMap.containsKey(key) || decodingMap.get(key) < node.getWeight()) {
-                //Get the current weight if the byte is already in the map.
-                if (decodingMap.containsKey(key)) currentWeight = decodingMap.get(key);
-                currentWeight++;
-                decodingMap.put(key, currentWeight);        //Update/put the key and current weight in the map.
-                bitFileWriter.writeDecompressed(key);       //Write the decompressed byte to file.
-            }
-            nextNode = root;                                //If leaf, return to the root.
-        }
-    }
-}
+package huffman_coding;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+
+/**
+ * @author Gustaf Rydholm
+ * @author Addi Djikic
+ *         CELTE13
+ *         DD1332
+ *         2016-02-25
+ */
+public class HuffmanCoding {
+    private PriorityQueueHuffman priorityQueueHuffman;
+    private BitFileReader bitFileReader;
+    private BitFileWriter bitFileWriter;
+
+    private Node root, nextNode;                            //Node for the Huffman trie.
+    private long[] trieCodes;                               //The path in the trie to each byte, left is 0 and right is 1.
+    private int[] trieLengths;                              //The length of the path in the trie to each byte.
+    private String nameOfDecodedFile;                       //Name for the decoded file.
+    private CanonicalCode canonicalCode;                    //The code if the file is compressed in the canonical mode.
+    private CodecMetrics metrics;                           //The metrics of the reader, or null.
+    private boolean stored;                                 //True if the file is stored raw, since the code saves too little.
+
+    private static final int DECODE_CHUNK = 1 << 16;        //Number of bytes decoded before they are written.
+
+
+    //Constructor for compressing a file
+    HuffmanCoding(BitFileReader bitFileReader, PriorityQueueHuffman priorityQueueHuffman) {
+        this(bitFileReader, priorityQueueHuffman, false);
+    }
+
+    //Constructor for compressing a file, canonical selects a header with the code lengths instead of the trie file.
+    HuffmanCoding(BitFileReader bitFileReader, PriorityQueueHuffman priorityQueueHuffman, boolean canonical) {
+        this(bitFileReader, priorityQueueHuffman, canonical, CanonicalCode.MAX_CODE_LENGTH);
+    }
+
+    //Constructor for compressing a file, in the canonical mode no code is longer than maxLength.
+    HuffmanCoding(BitFileReader bitFileReader, PriorityQueueHuffman priorityQueueHuffman, boolean canonical,
+                  int maxLength) {
+        this.priorityQueueHuffman = priorityQueueHuffman;
+        this.bitFileReader = bitFileReader;
+        this.bitFileWriter = new BitFileWriter();
+        this.metrics = bitFileReader.metrics;
+        bitFileWriter.metrics = metrics;
+        if (canonical) {
+            //The code lengths are calculated from the weights, the queue and the trie are not needed.
+            CodecMetrics.Span span = start(CodecMetrics.Phase.CODE);
+            canonicalCode = CanonicalCode.fromWeights(bitFileReader.weightArray, maxLength);
+            stop(span);
+            long bits = StoredBlocks.codedBits(canonicalCode.lengths, bitFileReader.countArray);
+            if (StoredBlocks.store(bits, canonicalCode.writtenLength(), bitFileReader.inputLength)) {
+                stored = true;
+                writeStoredOutput();
+                if (metrics != null) metrics.stored(bitFileReader.inputLength);
+            } else {
+                writeCanonicalOutput();
+                if (metrics != null) metrics.code(canonicalCode.lengths, bitFileReader.countArray);
+            }
+        } else {
+            CodecMetrics.Span span = start(CodecMetrics.Phase.TREE);
+            buildHuffmanTrie();
+            stop(span);
+            if (root != null && root.getWeight() != bitFileReader.inputLength) {
+                //The weight of the root is the number of bytes to decode, so the weights must not be scaled.
+                throw new IllegalStateException("Files larger than 2 GB can only be compressed in the canonical mode.");
+            }
+            bitFileWriter.writeTrie(root);
+            span = start(CodecMetrics.Phase.CODE);
+            buildCodes();
+            stop(span);
+            writeCompressedOutput();
+            if (metrics != null) metrics.code(trieLengths, bitFileReader.countArray);
+        }
+    }
+
+
+    //Constructor for decompressing a file.
+    HuffmanCoding(BitFileReader bitFileReader, String nameOfDecodedFile) {
+        this(bitFileReader, nameOfDecodedFile, false);
+    }
+
+    //Constructor for decompressing a file, bitwise selects the bit by bit walk of the trie.
+    HuffmanCoding(BitFileReader bitFileReader, String nameOfDecodedFile, boolean bitwise) {
+        this.bitFileReader = bitFileReader;
+        this.bitFileWriter = new BitFileWriter();
+        this.metrics = bitFileReader.metrics;
+        bitFileWriter.metrics = metrics;
+        this.root = bitFileReader.trieRoot;
+        this.nameOfDecodedFile = nameOfDecodedFile;
+        if (bitFileReader.header != null) {
+            decodeCanonical();
+        } else if (bitwise) {
+            bitFileReader.prepareBitwise();
+            decodeHuffmanTrie();
+        } else {
+            decodeWithTable();
+        }
+    }
+
+    CanonicalCode getCanonicalCode() {
+        return canonicalCode;
+    }
+
+    boolean isStored() {
+        return stored;
+    }
+
+    private CodecMetrics.Span start(CodecMetrics.Phase phase) {
+        return metrics == null ? null : metrics.start(phase);
+    }
+
+    private static void stop(CodecMetrics.Span span) {
+        if (span != null) span.stop();
+    }
+
+    /**
+     * Adds the time since <tt>start</tt> to a phase, without the time of the reads and the writes,
+     * which the reader and the writer add to their own phases.
+     *
+     * @param phase    the phase, encode or decode.
+     * @param start    the time the phase started.
+     * @param ioBefore the time of the reads and the writes when the phase started.
+     */
+    private void addWithoutIO(CodecMetrics.Phase phase, long start, long ioBefore) {
+        if (metrics == null) return;
+        metrics.add(phase, System.nanoTime() - start - (ioNanos() - ioBefore));
+    }
+
+    private long ioNanos() {
+        return metrics == null ? 0 : metrics.nanos(CodecMetrics.Phase.READ) + metrics.nanos(CodecMetrics.Phase.WRITE);
+    }
+
+    /**
+     * ----------------------------------------------------
+     *
+     *               Methods for building the trie.
+     *
+     * ----------------------------------------------------
+     */
+
+    /**
+     * Builds the Huffman trie via a priority queue, where the final element in the queue
+     * is the root of the trie.
+     */
+    private void buildHuffmanTrie() {
+        root = buildHuffmanTrie(priorityQueueHuffman);
+    }
+
+    /**
+     * Builds the Huffman trie from the nodes in the priority queue.
+     *
+     * @param priorityQueueHuffman the queue of the leaves, it is empty afterwards.
+     * @return the root of the trie, null if the queue was empty.
+     */
+    static Node buildHuffmanTrie(PriorityQueueHuffman priorityQueueHuffman) {
+        Node i, j;
+        int n = priorityQueueHuffman.cardinalOfPQ() - 1, newWeight;
+        for (int k = 0; k < n; k++) {
+            i = priorityQueueHuffman.pop();
+            j = priorityQueueHuffman.pop();
+
+            newWeight = i.getWeight() + j.getWeight();
+            Node newNode = new Node(newWeight);
+            newNode.right = i;
+            newNode.left = j;
+
+            priorityQueueHuffman.push(newNode);
+        }
+        return priorityQueueHuffman.pop();
+    }
+
+    /**
+     * Initialization of the code building for each byte.
+     */
+    private void buildCodes() {
+        trieCodes = new long[256];
+        trieLengths = new int[256];
+        if (root == null) return;
+        buildCodes(root, 0L, 0);
+    }
+
+    /**
+     * Recursive method that build the Huffman coding for each byte in the file.
+     *
+     * @param node        a node in the Huffman trie.
+     * @param currentPath the current calculated path taken in the trie, as bits.
+     * @param depth       the number of bits in the path.
+     */
+    private void buildCodes(Node node, long currentPath, int depth) {
+        if (node == null) return;
+
+        //If a leaf is found, the path and its length are put in the arrays at the index of the byte.
+        if (node.isLeaf()) {
+            if (depth > 64) throw new IllegalStateException("The path to " + node + " is longer than 64 bits.");
+            trieCodes[node.getSymbol()] = currentPath;
+            trieLengths[node.getSymbol()] = depth;
+        }
+
+        else {
+            buildCodes(node.left, currentPath << 1, depth + 1);
+            buildCodes(node.right, (currentPath << 1) | 1, depth + 1);
+        }
+    }
+
+    /**
+     * Writes the Huffman coding of each byte to a file called compressed.bin.
+     * The input file is read a second time, from its mapped regions.
+     */
+    private void writeCompressedOutput() {
+        bitFileWriter.openFile("compressed.bin");
+        long start = System.nanoTime(), ioBefore = ioNanos();
+        try {
+            bitFileReader.open();
+            for (int r = 0; r < bitFileReader.regionCount(); r++) {
+                MappedByteBuffer region = bitFileReader.region(r);
+                for (int i = 0, n = region.limit(); i < n; i++) {
+                    //Takes each bytes in the region and gets it's path in the trie from the code arrays.
+                    int b = region.get(i) & 0xff;
+                    bitFileWriter.writeBits(trieCodes[b], trieLengths[b]);
+                }
+            }
+            bitFileReader.close();
+        } catch (IOException e) {
+            System.err.println("Could not read the file that is compressed.");
+            e.printStackTrace();
+        }
+        bitFileWriter.close();
+        addWithoutIO(CodecMetrics.Phase.ENCODE, start, ioBefore);
+    }
+
+    /**
+     * Writes the header with the code lengths followed by the canonical code of each byte
+     * to a file called compressed.bin. The input file is read a second time, from its mapped regions.
+     */
+    private void writeCanonicalOutput() {
+        bitFileWriter.openFile("compressed.bin");
+        CompressedHeader header = new CompressedHeader(bitFileReader.inputLength, canonicalCode);
+        bitFileWriter.writeHeader(header.toBytes());
+        long start = System.nanoTime(), ioBefore = ioNanos();
+        int[] codes = canonicalCode.codes;
+        int[] lengths = canonicalCode.lengths;
+        try {
+            bitFileReader.open();
+            for (int r = 0; r < bitFileReader.regionCount(); r++) {
+                MappedByteBuffer region = bitFileReader.region(r);
+                for (int i = 0, n = region.limit(); i < n; i++) {
+                    int b = region.get(i) & 0xff;
+                    bitFileWriter.writeBits(codes[b], lengths[b]);
+                }
+            }
+            bitFileReader.close();
+        } catch (IOException e) {
+            System.err.println("Could not read the file that is compressed.");
+            e.printStackTrace();
+        }
+        bitFileWriter.close();
+        addWithoutIO(CodecMetrics.Phase.ENCODE, start, ioBefore);
+    }
+
+    /**
+     * Writes a header without a code followed by the original bytes to a file called compressed.bin,
+     * for a file where the code saves too little.
+     */
+    private void writeStoredOutput() {
+        bitFileWriter.openFile("compressed.bin");
+        bitFileWriter.writeHeader(new CompressedHeader(bitFileReader.inputLength).toBytes());
+        try {
+            bitFileReader.open();
+            for (int r = 0; r < bitFileReader.regionCount(); r++) bitFileWriter.writeDecompressed(bitFileReader.region(r));
+            bitFileReader.close();
+        } catch (IOException e) {
+            System.err.println("Could not read the file that is compressed.");
+            e.printStackTrace();
+        }
+        bitFileWriter.closeFile();
+    }
+
+    /**
+     * ----------------------------------------------------
+     *
+     *               Methods for decoding the trie.
+     *
+     * ----------------------------------------------------
+     */
+
+
+    /**
+     * Decodes the compressed bytes with a lookup table built from the Huffman trie. The weight of the
+     * root is the number of bytes in the original file, which is the number of symbols to decode.
+     */
+    private void decodeWithTable() {
+        bitFileWriter.openFile(nameOfDecodedFile);
+        if (root != null) {
+            CodecMetrics.Span span = start(CodecMetrics.Phase.CODE);
+            TableDecoder tableDecoder = TableDecoder.fromTrie(root);
+            stop(span);
+            long start = System.nanoTime(), ioBefore = ioNanos();
+            byte[] in = bitFileReader.compressedBytes;
+            byte[] out = new byte[DECODE_CHUNK];
+            long bitPosition = 0;
+            int remaining = root.getWeight();
+            while (remaining > 0) {
+                int count = Math.min(remaining, DECODE_CHUNK);
+                bitPosition = tableDecoder.decode(in, bitPosition, in.length, out, 0, count);
+                bitFileWriter.writeDecompressed(out, 0, count);
+                remaining -= count;
+            }
+            addWithoutIO(CodecMetrics.Phase.DECODE, start, ioBefore);
+        }
+        bitFileWriter.closeFile();
+    }
+
+    /**
+     * Decodes a file compressed in the canonical mode. The code is rebuilt from the code lengths
+     * in the header and the compressed bits start after the header. If the file is split into
+     * blocks, each block starts at the bit given by the block index. Blocks that are split into
+     * interleaved streams are decoded a whole block at a time. A file with a code per context is
+     * decoded with the context model, and a stored file or block is copied.
+     */
+    private void decodeCanonical() {
+        bitFileWriter.openFile(nameOfDecodedFile);
+        CompressedHeader header = bitFileReader.header;
+        byte[] in = bitFileReader.compressedBytes;
+        if (header.isStored()) {
+            if (header.length + header.symbolCount > in.length) throw new IllegalStateException("The stored file is damaged.");
+            bitFileWriter.writeDecompressed(in, header.length, (int) header.symbolCount);
+            bitFileWriter.closeFile();
+            return;
+        }
+        if (header.hasContexts()) {
+            long start = System.nanoTime(), ioBefore = ioNanos();
+            decodeContexts(header.contexts, in, header.length * 8L, header.symbolCount);
+            addWithoutIO(CodecMetrics.Phase.DECODE, start, ioBefore);
+            bitFileWriter.closeFile();
+            return;
+        }
+        CodecMetrics.Span span = start(CodecMetrics.Phase.CODE);
+        TableDecoder tableDecoder = header.code.tableDecoder();
+        stop(span);
+        if (metrics != null) metrics.maxCodeLength(header.code.maxLength);
+        long start = System.nanoTime(), ioBefore = ioNanos();
+        if (header.hasRetraining()) {
+            throw new IllegalStateException("The code changes between the blocks, use a BlockDecoder for them.");
+        }
+        if (header.hasBlocks()) {
+            try {
+                BlockIndex index = BlockIndex.read(in, header.hasStoredBlocks());
+                for (int i = 0; i < index.blockCount; i++) {
+                    long count = Math.min(header.blockSize, header.symbolCount - index.uncompressedOffsets[i]);
+                    if (index.isStored(i)) {
+                        int first = (int) (index.bitOffsets[i] >>> 3);
+                        if (first + count > in.length) throw new IllegalStateException("The stored block " + i + " is damaged.");
+                        bitFileWriter.writeDecompressed(in, first, (int) count);
+                    } else if (header.hasStreams()) {
+                        long end = i + 1 < index.blockCount ? index.bitOffsets[i + 1] >>> 3 : index.indexPosition;
+                        decodeStreams(tableDecoder, in, (int) (index.bitOffsets[i] >>> 3), (int) end, (int) count,
+                                header.streams);
+                    } else {
+                        decodeSymbols(tableDecoder, in, index.bitOffsets[i], count);
+                    }
+                }
+            } catch (IOException e) {
+                System.err.println("Could not read the block index.");
+                e.printStackTrace();
+            }
+        } else if (header.hasStreams()) {
+            if (header.symbolCount > Integer.MAX_VALUE) throw new IllegalStateException("The streams are too large to decode.");
+            decodeStreams(tableDecoder, in, header.length, in.length, (int) header.symbolCount, header.streams);
+        } else {
+            decodeSymbols(tableDecoder, in, header.length * 8L, header.symbolCount);
+        }
+        addWithoutIO(CodecMetrics.Phase.DECODE, start, ioBefore);
+        bitFileWriter.closeFile();
+    }
+
+    /**
+     * Decodes a number of symbols and writes them to the decompressed file, one chunk at a time.
+     *
+     * @param tableDecoder the decoder of the code.
+     * @param in           the compressed bytes.
+     * @param bitPosition  the position of the first bit to decode.
+     * @param count        number of symbols to decode.
+     */
+    private void decodeSymbols(TableDecoder tableDecoder, byte[] in, long bitPosition, long count) {
+        byte[] out = new byte[(int) Math.min(count, DECODE_CHUNK)];
+        long remaining = count;
+        while (remaining > 0) {
+            int n = (int) Math.min(remaining, DECODE_CHUNK);
+            bitPosition = tableDecoder.decode(in, bitPosition, in.length, out, 0, n);
+            bitFileWriter.writeDecompressed(out, 0, n);
+            remaining -= n;
+        }
+    }
+
+    /**
+     * Decodes a number of symbols with the code of their context, one chunk at a time. The context of
+     * the first symbol of a chunk is the last symbol of the chunk before it.
+     *
+     * @param contextModel the codes of the contexts.
+     * @param in           the compressed bytes.
+     * @param bitPosition  the position of the first bit to decode.
+     * @param count        number of symbols to decode.
+     */
+    private void decodeContexts(ContextModel contextModel, byte[] in, long bitPosition, long count) {
+        byte[] out = new byte[(int) Math.min(count, DECODE_CHUNK)];
+        long remaining = count;
+        int previous = 0;
+        while (remaining > 0) {
+            int n = (int) Math.min(remaining, DECODE_CHUNK);
+            bitPosition = contextModel.decode(in, bitPosition, in.length, out, 0, n, previous);
+            previous = out[n - 1] & 0xff;
+            bitFileWriter.writeDecompressed(out, 0, n);
+            remaining -= n;
+        }
+    }
+
+    /**
+     * Decodes a block that is split into interleaved streams and writes it to the decompressed file.
+     *
+     * @param tableDecoder the decoder of the code.
+     * @param in           the compressed bytes.
+     * @param start        the index of the jump table of the block.
+     * @param end          the index after the last byte of the block.
+     * @param count        number of symbols in the block.
+     * @param streams      number of streams in the block.
+     */
+    private void decodeStreams(TableDecoder tableDecoder, byte[] in, int start, int end, int count, int streams) {
+        byte[] out = new byte[count];
+        tableDecoder.decodeStreams(in, start, end, out, 0, count, count, streams);
+        bitFileWriter.writeDecompressed(out, 0, count);
+    }
+
+    /**
+     * Decodes the Huffman trie by going down through it bit by bit of each byte from the input file.
+     * The weight of the root is the number of bytes in the original file, so the decoding stops after
+     * that many bytes and the zeros that pad the last byte are not decoded.
+     * Open and closes the file which contains the decompressed bytes.
+     */
+    private void decodeHuffmanTrie() {
+        bitFileWriter.openFile(nameOfDecodedFile);
+        long remaining = root == null ? 0 : root.getWeight();
+        if (root != null && root.isLeaf()) {
+            //A trie with one byte has codes without bits, the byte is written as many times as it occurs.
+            for (; remaining > 0; remaining--) bitFileWriter.writeDecompressed(root.getSymbol());
+        }
+        nextNode = root;
+        char[] inputArray = bitFileReader.inputArray;
+        for (int i = 0; i < inputArray.length && remaining > 0; i++) {
+            //A string containing 1' s and 0's so we can go through the Huffman trie (the byte represented as a binary string).
+            String binaryStr = bitFileReader.mapOfTriePath.get(inputArray[i]);
+            for (int k = 0; k < binaryStr.length() && remaining > 0; k++) {
+                nextNode = binaryStr.charAt(k) == '0' ? nextNode.left : nextNode.right;
+                if (nextNode.isLeaf()) {
+                    bitFileWriter.writeDecompressed(nextNode.getSymbol());
+                    nextNode = root;                        //If leaf, return to the root.
+                    remaining--;
+                }
+            }
+        }
+        bitFileWriter.closeFile();
+        if (remaining > 0) throw new IllegalStateException("The compressed file ends " + remaining + " bytes too early.");
+    }
+}
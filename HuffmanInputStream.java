@@ -0,0 +1,139 @@
+package huffman_coding;
+
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * An input stream that decompresses the frames written by a {@link HuffmanOutputStream}. One frame
+ * is read and decoded at a time, so the memory does not depend on the length of the stream, and the
+ * bytes of a frame can be read as soon as the frame has arrived.
+ *
+ * @author Gustaf Rydholm
+ * @author Addi Djikic
+ *         CELTE13
+ *         DD1332
+ *         2016-02-25
+ */
+public class HuffmanInputStream extends FilterInputStream {
+    private final HuffmanCodec codec;
+    private byte[] compressed = new byte[0];        //The compressed frame, grows to the largest frame.
+    private byte[] frame = new byte[0];             //The decoded frame, grows to the largest frame.
+    private int position;                           //Index of the next byte to read in the frame.
+    private int length;                             //Number of decoded bytes in the frame.
+    private boolean ended;                          //True after the end frame is read.
+
+    public HuffmanInputStream(InputStream in) {
+        this(in, new HuffmanCodec());
+    }
+
+    public HuffmanInputStream(InputStream in, HuffmanCodec codec) {
+        super(in);
+        this.codec = codec;
+    }
+
+    @Override
+    public int read() throws IOException {
+        while (position == length) {
+            if (!readFrame()) return -1;
+        }
+        return frame[position++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (off < 0 || len < 0 || off > b.length - len) throw new IndexOutOfBoundsException();
+        if (len == 0) return 0;
+        while (position == length) {
+            if (!readFrame()) return -1;
+        }
+        int n = Math.min(len, length - position);
+        System.arraycopy(frame, position, b, off, n);
+        position += n;
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = 0;
+        while (skipped < n) {
+            if (position == length && !readFrame()) break;
+            int step = (int) Math.min(n - skipped, length - position);
+            position += step;
+            skipped += step;
+        }
+        return skipped;
+    }
+
+    @Override
+    public int available() {
+        return length - position;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public synchronized void mark(int readlimit) {
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+        throw new IOException("A HuffmanInputStream does not support mark.");
+    }
+
+    /**
+     * Reads and decodes the next frame.
+     *
+     * @return false if the end frame was read.
+     * @throws IOException if the stream ends before the end frame or a frame is damaged.
+     */
+    private boolean readFrame() throws IOException {
+        if (ended) return false;
+        int size = readLength();
+        if (size == 0) {
+            ended = true;
+            return false;
+        }
+        if (size < 0 || size > HuffmanCodec.maxCompressedLength(HuffmanOutputStream.MAX_FRAME_SIZE)) {
+            throw new IOException("The frame of " + size + " compressed bytes is too large.");
+        }
+        if (compressed.length < size) compressed = new byte[size];
+        readFully(compressed, size);
+        try {
+            //Every code is at least one bit, so a frame has at most 8 bytes per compressed byte.
+            long count = HuffmanCodec.decompressedLength(compressed, 0, size);
+            if (count > HuffmanOutputStream.MAX_FRAME_SIZE || count > 8L * size) {
+                throw new IOException("The frame of " + count + " bytes is damaged.");
+            }
+            if (frame.length < count) frame = new byte[(int) count];
+            length = codec.decompress(compressed, 0, size, frame, 0, frame.length);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("The frame is damaged.", e);
+        }
+        position = 0;
+        return true;
+    }
+
+    private int readLength() throws IOException {
+        int value = 0;
+        for (int i = 0; i < 4; i++) {
+            int b = in.read();
+            if (b < 0) throw new EOFException("The compressed stream has no end frame.");
+            value = (value << 8) | b;
+        }
+        return value;
+    }
+
+    private void readFully(byte[] bytes, int size) throws IOException {
+        int n = 0;
+        while (n < size) {
+            int read = in.read(bytes, n, size - n);
+            if (read < 0) throw new EOFException("The compressed stream ended in the middle of a frame.");
+            n += read;
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package huffman_coding;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * An output stream that compresses the bytes written to it with a {@link HuffmanCodec}. The bytes are
+ * collected into frames of at most <tt>frameSize</tt> bytes, and each frame is compressed with its own
+ * canonical code and written as the number of compressed bytes, 4 bytes with the most significant byte
+ * first, followed by the compressed bytes. A frame with 0 compressed bytes ends the stream.
+ * <p>
+ * A frame is written when it is full or when the stream is flushed, so the output starts before the
+ * input is finished. The stream is read by a {@link HuffmanInputStream}.
+ *
+ * @author Gustaf Rydholm
+ * @author Addi Djikic
+ *         CELTE13
+ *         DD1332
+ *         2016-02-25
+ */
+public class HuffmanOutputStream extends FilterOutputStream {
+    static final int DEFAULT_FRAME_SIZE = 1 << 16;  //Number of original bytes in a frame.
+    static final int MAX_FRAME_SIZE = 1 << 24;      //Largest frame a HuffmanInputStream accepts.
+
+    private final HuffmanCodec codec;
+    private final byte[] frame;                     //The bytes of the frame that is not yet written.
+    private int position;                           //Number of bytes in the frame.
+    private final byte[] compressed;                //The compressed frame, reused for every frame.
+    private boolean finished;                       //True after the end frame is written.
+
+    public HuffmanOutputStream(OutputStream out) {
+        this(out, DEFAULT_FRAME_SIZE, new HuffmanCodec());
+    }
+
+    /**
+     * Creates a stream with the frame size and the codec.
+     *
+     * @param out       the stream of the compressed frames.
+     * @param frameSize the maximum number of original bytes in a frame.
+     * @param codec     the codec that compresses the frames.
+     */
+    public HuffmanOutputStream(OutputStream out, int frameSize, HuffmanCodec codec) {
+        super(out);
+        if (frameSize < 1 || frameSize > MAX_FRAME_SIZE) {
+            throw new IllegalArgumentException("The frame size must be between 1 and " + MAX_FRAME_SIZE + ", not " + frameSize + ".");
+        }
+        this.codec = codec;
+        this.frame = new byte[frameSize];
+        this.compressed = new byte[4 + HuffmanCodec.maxCompressedLength(frameSize)];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (position == frame.length) writeFrame();
+        frame[position++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (off < 0 || len < 0 || off > b.length - len) throw new IndexOutOfBoundsException();
+        while (len > 0) {
+            if (position == frame.length) writeFrame();
+            int n = Math.min(len, frame.length - position);
+            System.arraycopy(b, off, frame, position, n);
+            position += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    /**
+     * Writes the bytes that are not yet written as a frame, even if the frame is not full, and
+     * flushes the underlying stream.
+     *
+     * @throws IOException if the frame could not be written.
+     */
+    @Override
+    public void flush() throws IOException {
+        if (finished) throw new IOException("The stream is finished.");
+        writeFrame();
+        out.flush();
+    }
+
+    /**
+     * Writes the last frame and the end frame without closing the underlying stream, so more data
+     * can follow the compressed stream.
+     *
+     * @throws IOException if the frames could not be written.
+     */
+    public void finish() throws IOException {
+        if (finished) return;
+        writeFrame();
+        writeLength(0);
+        out.write(compressed, 0, 4);
+        out.flush();
+        finished = true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+        } finally {
+            out.close();
+        }
+    }
+
+    private void writeFrame() throws IOException {
+        if (position == 0) return;
+        if (finished) throw new IOException("The stream is finished.");
+        int length = codec.compress(frame, 0, position, compressed, 4, compressed.length - 4);
+        writeLength(length);
+        out.write(compressed, 0, 4 + length);
+        position = 0;
+    }
+
+    private void writeLength(int length) {
+        compressed[0] = (byte) (length >>> 24);
+        compressed[1] = (byte) (length >>> 16);
+        compressed[2] = (byte) (length >>> 8);
+        compressed[3] = (byte) length;
+    }
+}
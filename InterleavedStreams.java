@@ -0,0 +1,86 @@
+package huffman_coding;
+
+/**
+ * Splits a block into several sub-streams that can be decoded at the same time. The symbols of the
+ * block are divided into consecutive segments of the same length, the last segment may be shorter,
+ * and each segment is coded as its own stream that starts on a new byte. The block starts with a
+ * jump table of the number of compressed bytes in each stream except the last, 4 bytes each.
+ * <p>
+ * One Huffman stream is a chain where the next code can not be found before the length of the code
+ * before it is known. With several streams the decoder works on one symbol from each stream in the
+ * same loop, and the chains are independent so the processor can run them in parallel.
+ *
+ * @author Gustaf Rydholm
+ * @author Addi Djikic
+ *         CELTE13
+ *         DD1332
+ *         2016-02-25
+ */
+class InterleavedStreams {
+    static final int DEFAULT_STREAMS = 4;           //Number of streams in a block.
+    static final int MAX_STREAMS = 16;              //Most streams in a block.
+
+    private InterleavedStreams() {
+    }
+
+    /**
+     * Number of symbols in each stream except the last.
+     *
+     * @param blockLength number of symbols in the block.
+     * @param streams     number of streams.
+     * @return the length of a segment.
+     */
+    static int segmentLength(int blockLength, int streams) {
+        return (int) (((long) blockLength + streams - 1) / streams);
+    }
+
+    /**
+     * The largest number of bytes of a block in addition to the bits of the codes: the jump table
+     * and the padding at the end of each stream.
+     *
+     * @param streams number of streams.
+     * @return number of extra bytes.
+     */
+    static int overhead(int streams) {
+        return 4 * (streams - 1) + streams;
+    }
+
+    /**
+     * Encodes a block as interleaved streams into the destination.
+     *
+     * @param code      the code of the block.
+     * @param src       the array with the bytes of the block.
+     * @param srcOffset the index of the first byte of the block.
+     * @param srcLength number of bytes in the block.
+     * @param streams   number of streams.
+     * @param dst       the array for the compressed block.
+     * @param dstOffset the index of the first compressed byte in dst.
+     * @param dstLength number of bytes that may be written to dst.
+     * @return number of compressed bytes.
+     */
+    static int encode(CanonicalCode code, byte[] src, int srcOffset, int srcLength, int streams,
+                      byte[] dst, int dstOffset, int dstLength) {
+        int[] codes = code.codes;
+        int[] lengths = code.lengths;
+        int segment = segmentLength(srcLength, streams);
+        int table = dstOffset;
+        int position = dstOffset + 4 * (streams - 1);
+        int end = dstOffset + dstLength;
+        for (int s = 0; s < streams; s++) {
+            int from = srcOffset + Math.min(srcLength, s * segment);
+            int to = srcOffset + Math.min(srcLength, (s + 1) * segment);
+            BitFileWriter bitFileWriter = new BitFileWriter(dst, position, end - position);
+            for (int i = from; i < to; i++) bitFileWriter.writeBits(codes[src[i] & 0xff], lengths[src[i] & 0xff]);
+            bitFileWriter.flush();
+            int length = bitFileWriter.position() - position;
+            if (s < streams - 1) {
+                dst[table++] = (byte) (length >>> 24);
+                dst[table++] = (byte) (length >>> 16);
+                dst[table++] = (byte) (length >>> 8);
+                dst[table++] = (byte) length;
+            }
+            position += length;
+        }
+        return position - dstOffset;
+    }
+}
@@ -0,0 +1,291 @@
+package huffman_coding;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Compresses or decompresses a stream in three stages that run at the same time, each on its own
+ * thread: a reader that fills buffers from the input, a coder that compresses or decompresses them and
+ * a writer that writes them to the output. The disk is read and written while the coder works, so the
+ * time is close to the slowest stage instead of the sum of the stages.
+ * <p>
+ * The stages hand buffers to each other through bounded queues. Each side of the coder has a pool of
+ * <tt>depth</tt> buffers that are reused for the whole stream, so a stage that is ahead waits for a
+ * free buffer instead of using more memory. The compressed stream is the frames of a
+ * {@link HuffmanOutputStream}, so it can also be read by a {@link HuffmanInputStream}.
+ *
+ * @author Gustaf Rydholm
+ * @author Addi Djikic
+ *         CELTE13
+ *         DD1332
+ *         2016-02-25
+ */
+class Pipeline {
+    static final int DEFAULT_FRAME_SIZE = 1 << 20;      //Number of original bytes in a frame.
+    static final int DEFAULT_DEPTH = 4;                 //Number of buffers in each pool.
+
+    /**
+     * A buffer that is passed between the stages.
+     */
+    private static class Buffer {
+        byte[] bytes;                                   //The bytes, may grow when a frame is decompressed.
+        int length;                                     //Number of bytes in use.
+
+        Buffer(int size) {
+            bytes = new byte[size];
+        }
+    }
+
+    private static final Buffer END = new Buffer(0);    //Passed to the next stage after the last buffer.
+
+    private final HuffmanCodec codec;
+    private final CodecMetrics metrics;                 //The metrics of the stages, or null.
+    private final BlockingQueue<Buffer> freeInput;      //Empty buffers for the reader.
+    private final BlockingQueue<Buffer> toCoder;        //Buffers read by the reader.
+    private final BlockingQueue<Buffer> freeOutput;     //Empty buffers for the coder.
+    private final BlockingQueue<Buffer> toWriter;       //Buffers coded by the coder.
+
+    private Pipeline(HuffmanCodec codec, CodecMetrics metrics, int depth, int inputSize, int outputSize) {
+        if (depth < 1) throw new IllegalArgumentException("The depth must be at least 1, not " + depth + ".");
+        this.codec = metrics == null ? codec : codec.withMetrics(metrics);
+        this.metrics = metrics;
+        //One place more than the buffers, so there is always room for the end.
+        freeInput = new ArrayBlockingQueue<>(depth);
+        toCoder = new ArrayBlockingQueue<>(depth + 1);
+        freeOutput = new ArrayBlockingQueue<>(depth);
+        toWriter = new ArrayBlockingQueue<>(depth + 1);
+        for (int i = 0; i < depth; i++) {
+            freeInput.add(new Buffer(inputSize));
+            freeOutput.add(new Buffer(outputSize));
+        }
+    }
+
+    /**
+     * ----------------------------------------------------
+     *
+     *               Methods for compressing.
+     *
+     * ----------------------------------------------------
+     */
+
+    /**
+     * Compresses the input to the output as frames. The streams are not closed.
+     *
+     * @param in        the original bytes.
+     * @param out       the stream of the compressed frames.
+     * @param frameSize number of original bytes in a frame.
+     * @param depth     number of buffers in each pool.
+     * @param codec     the codec that compresses the frames.
+     * @param metrics   the metrics, or null.
+     * @throws IOException if the input could not be read or the output written.
+     */
+    static void encode(InputStream in, OutputStream out, int frameSize, int depth, HuffmanCodec codec,
+                       CodecMetrics metrics) throws IOException {
+        if (frameSize < 1 || frameSize > HuffmanOutputStream.MAX_FRAME_SIZE) {
+            throw new IllegalArgumentException("The frame size must be between 1 and "
+                    + HuffmanOutputStream.MAX_FRAME_SIZE + ", not " + frameSize + ".");
+        }
+        Pipeline pipeline = new Pipeline(codec, metrics, depth, frameSize, 4 + HuffmanCodec.maxCompressedLength(frameSize));
+        pipeline.run(() -> pipeline.readOriginal(in), pipeline::compressFrames, () -> pipeline.writeFrames(out, true));
+    }
+
+    /**
+     * The reader of the compression, fills each buffer with a frame of original bytes.
+     */
+    private Void readOriginal(InputStream in) throws IOException, InterruptedException {
+        while (true) {
+            Buffer buffer = freeInput.take();
+            long start = System.nanoTime();
+            buffer.length = in.readNBytes(buffer.bytes, 0, buffer.bytes.length);
+            record(CodecMetrics.Phase.READ, start);
+            if (buffer.length == 0) break;
+            if (metrics != null) metrics.addBytesIn(buffer.length);
+            toCoder.put(buffer);
+        }
+        toCoder.put(END);
+        return null;
+    }
+
+    /**
+     * The coder of the compression, compresses each buffer after the 4 bytes of the length of the frame.
+     */
+    private Void compressFrames() throws InterruptedException {
+        Buffer buffer;
+        while ((buffer = toCoder.take()) != END) {
+            Buffer frame = freeOutput.take();
+            int length = codec.compress(buffer.bytes, 0, buffer.length, frame.bytes, 4, frame.bytes.length - 4);
+            writeLength(frame.bytes, length);
+            frame.length = 4 + length;
+            freeInput.put(buffer);
+            toWriter.put(frame);
+        }
+        toWriter.put(END);
+        return null;
+    }
+
+    private static void writeLength(byte[] bytes, int length) {
+        bytes[0] = (byte) (length >>> 24);
+        bytes[1] = (byte) (length >>> 16);
+        bytes[2] = (byte) (length >>> 8);
+        bytes[3] = (byte) length;
+    }
+
+    /**
+     * ----------------------------------------------------
+     *
+     *               Methods for decompressing.
+     *
+     * ----------------------------------------------------
+     */
+
+    /**
+     * Decompresses the frames of the input to the output. The streams are not closed.
+     *
+     * @param in      the stream of the compressed frames.
+     * @param out     the original bytes.
+     * @param depth   number of buffers in each pool.
+     * @param codec   the codec that decompresses the frames.
+     * @param metrics the metrics, or null.
+     * @throws IOException if the input could not be read, a frame is damaged or the output could not be written.
+     */
+    static void decode(InputStream in, OutputStream out, int depth, HuffmanCodec codec, CodecMetrics metrics)
+            throws IOException {
+        //The buffers grow to the largest frame, the frame size is not known before the first frame.
+        Pipeline pipeline = new Pipeline(codec, metrics, depth, 0, 0);
+        pipeline.run(() -> pipeline.readFrames(in), pipeline::decompressFrames, () -> pipeline.writeFrames(out, false));
+    }
+
+    /**
+     * The reader of the decompression, fills each buffer with a compressed frame without its length.
+     */
+    private Void readFrames(InputStream in) throws IOException, InterruptedException {
+        while (true) {
+            long start = System.nanoTime();
+            int size = readLength(in);
+            if (size == 0) break;
+            if (size < 0 || size > HuffmanCodec.maxCompressedLength(HuffmanOutputStream.MAX_FRAME_SIZE)) {
+                throw new IOException("The frame of " + size + " compressed bytes is too large.");
+            }
+            record(CodecMetrics.Phase.READ, start);
+            Buffer buffer = freeInput.take();
+            start = System.nanoTime();
+            if (buffer.bytes.length < size) buffer.bytes = new byte[size];
+            if (in.readNBytes(buffer.bytes, 0, size) < size) {
+                throw new EOFException("The compressed stream ended in the middle of a frame.");
+            }
+            buffer.length = size;
+            record(CodecMetrics.Phase.READ, start);
+            if (metrics != null) metrics.addBytesIn(4 + size);
+            toCoder.put(buffer);
+        }
+        toCoder.put(END);
+        return null;
+    }
+
+    private static int readLength(InputStream in) throws IOException {
+        int value = 0;
+        for (int i = 0; i < 4; i++) {
+            int b = in.read();
+            if (b < 0) throw new EOFException("The compressed stream has no end frame.");
+            value = (value << 8) | b;
+        }
+        return value;
+    }
+
+    /**
+     * The coder of the decompression, decompresses each frame into a buffer of original bytes.
+     */
+    private Void decompressFrames() throws IOException, InterruptedException {
+        Buffer buffer;
+        while ((buffer = toCoder.take()) != END) {
+            Buffer frame = freeOutput.take();
+            try {
+                //Every code is at least one bit, so a frame has at most 8 bytes per compressed byte.
+                long count = HuffmanCodec.decompressedLength(buffer.bytes, 0, buffer.length);
+                if (count > HuffmanOutputStream.MAX_FRAME_SIZE || count > 8L * buffer.length) {
+                    throw new IOException("The frame of " + count + " bytes is damaged.");
+                }
+                if (frame.bytes.length < count) frame.bytes = new byte[(int) count];
+                frame.length = codec.decompress(buffer.bytes, 0, buffer.length, frame.bytes, 0, frame.bytes.length);
+            } catch (IllegalArgumentException e) {
+                throw new IOException("The frame is damaged.", e);
+            }
+            freeInput.put(buffer);
+            toWriter.put(frame);
+        }
+        toWriter.put(END);
+        return null;
+    }
+
+    /**
+     * ----------------------------------------------------
+     *
+     *               Methods for running the stages.
+     *
+     * ----------------------------------------------------
+     */
+
+    /**
+     * The writer of both directions, writes each buffer and gives it back to the coder.
+     *
+     * @param out      the output.
+     * @param endFrame true if the end frame of the compressed stream is written after the last buffer.
+     */
+    private Void writeFrames(OutputStream out, boolean endFrame) throws IOException, InterruptedException {
+        Buffer buffer;
+        while ((buffer = toWriter.take()) != END) {
+            long start = System.nanoTime();
+            out.write(buffer.bytes, 0, buffer.length);
+            record(CodecMetrics.Phase.WRITE, start);
+            if (metrics != null) metrics.addBytesOut(buffer.length);
+            freeOutput.put(buffer);
+        }
+        long start = System.nanoTime();
+        if (endFrame) {
+            out.write(new byte[4]);
+            if (metrics != null) metrics.addBytesOut(4);
+        }
+        out.flush();
+        record(CodecMetrics.Phase.WRITE, start);
+        return null;
+    }
+
+    private void record(CodecMetrics.Phase phase, long start) {
+        if (metrics != null) metrics.add(phase, System.nanoTime() - start);
+    }
+
+    /**
+     * Runs the three stages on their own threads and waits for all of them. If a stage fails, the
+     * others are interrupted, since they may wait for a buffer that will never come.
+     *
+     * @throws IOException if a stage failed.
+     */
+    private void run(Callable<Void> reader, Callable<Void> coder, Callable<Void> writer) throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            CompletionService<Void> stages = new ExecutorCompletionService<>(executor);
+            stages.submit(reader);
+            stages.submit(coder);
+            stages.submit(writer);
+            for (int i = 0; i < 3; i++) stages.take().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("The pipeline was interrupted.", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+            throw new IOException("A stage of the pipeline failed.", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -1,60 +1,79 @@
-package huffman_coding;
-
-import java.util.Comparator;
-import java.util.PriorityQueue;
-
-/**
- * @author Gustaf Rydholm
- * @author Addi Djikic
- *         CELTE13
- *         DD1332
- *         2016-02-25
- */
-
-class PriorityQueueHuffman {
-    BitFileReader bitFileReader;
-    PriorityQueue<Node> priorityQueue;
-
-    PriorityQueueHuffman(BitFileReader bitFileReader) {
-        this.bitFileReader = bitFileReader;
-        setPriorityQueue();
-    }
-
-    /**
-     * Initializes the priority queue, which is sorted by the weight of the node. The <tt>Nodes</tt> in the queue
-     * are sorted by their weights. The two <tt>Nodes</tt> with the smallest weights are popped.
-     */
-    void setPriorityQueue() {
-        int weight;
-        priorityQueue = new PriorityQueue<>(bitFileReader.setOfBytes.size(),
-                (Comparator<Node>) (node1, node2) -> node1.getWeight() - node2.getWeight());
-
-        for (char b : bitFileReader.setOfBytes) {
-            weight = bitFileReader.weightArray[b];
-            Node node = new Node(b, weight);
-            priorityQueue.add(node);
-        }
-
-    }
-
-    void push(Node node) {
-        priorityQueue.add(node);
-    }
-
-    Node pop() {
-        return priorityQueue.poll();
-    }
-
-    Node peek() {
-        return priorityQueue.peek();
-    }
-
-    int cardinalOfPQ() {
-        return priorityQueue.size();
-    }
-
-    boolean isEmpty() {
-        return priorityQueue.size() == 0;
-    }
-
+package huffman_coding;
+
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * @author Gustaf Rydholm
+ * @author Addi Djikic
+ *         CELTE13
+ *         DD1332
+ *         2016-02-25
+ */
+
+class PriorityQueueHuffman {
+    BitFileReader bitFileReader;
+    PriorityQueue<Node> priorityQueue;
+
+    PriorityQueueHuffman(BitFileReader bitFileReader) {
+        this.bitFileReader = bitFileReader;
+        setPriorityQueue(bitFileReader.setOfBytes, bitFileReader.weightArray);
+    }
+
+    /**
+     * Constructor for weights that are not read by a <tt>BitFileReader</tt>, the bytes with a
+     * weight are added in the order of their value.
+     *
+     * @param weightArray the weight of each byte.
+     */
+    PriorityQueueHuffman(int[] weightArray) {
+        Set<Character> setOfBytes = new LinkedHashSet<>();
+        for (int b = 0; b < weightArray.length; b++) {
+            if (weightArray[b] != 0) setOfBytes.add((char) b);
+        }
+        setPriorityQueue(setOfBytes, weightArray);
+    }
+
+    /**
+     * Initializes the priority queue, which is sorted by the weight of the node. The <tt>Nodes</tt> in the queue
+     * are sorted by their weights. The two <tt>Nodes</tt> with the smallest weights are popped.
+     *
+     * @param setOfBytes  the bytes in the input.
+     * @param weightArray the weight of each byte.
+     */
+    void setPriorityQueue(Set<Character> setOfBytes, int[] weightArray) {
+        int weight;
+        priorityQueue = new PriorityQueue<>(Math.max(1, setOfBytes.size()),
+                (Comparator<Node>) (node1, node2) -> node1.getWeight() - node2.getWeight());
+
+        for (char b : setOfBytes) {
+            weight = weightArray[b];
+            Node node = new Node(b, weight);
+            priorityQueue.add(node);
+        }
+
+    }
+
+    void push(Node node) {
+        priorityQueue.add(node);
+    }
+
+    Node pop() {
+        return priorityQueue.poll();
+    }
+
+    Node peek() {
+        return priorityQueue.peek();
+    }
+
+    int cardinalOfPQ() {
+        return priorityQueue.size();
+    }
+
+    boolean isEmpty() {
+        return priorityQueue.size() == 0;
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,48 @@
+package huffman_coding;
+
+/**
+ * Decides if a block is stored raw instead of coded. The exact size of a coded block is known from
+ * its histogram before it is coded, the sum of the count times the code length of each byte, so a
+ * block where the code saves too little, such as data that is already compressed, is copied
+ * instead. That saves the time to encode and to decode it, and the output is never more than a
+ * few bytes larger than the input.
+ *
+ * @author Gustaf Rydholm
+ * @author Addi Djikic
+ *         CELTE13
+ *         DD1332
+ *         2016-02-25
+ */
+class StoredBlocks {
+    static final double MIN_SAVING = 0.02;          //Blocks that the code makes less than 2 % smaller are stored.
+
+    private StoredBlocks() {
+    }
+
+    /**
+     * The exact number of bits of the codes of the bytes, for counts that may not fit in an <tt>int</tt>.
+     * Counts that do fit are summed by {@link CodeLengths#cost(int[], int[])}.
+     *
+     * @param lengths    the code length of each byte.
+     * @param countArray number of times each byte occurs.
+     * @return the number of bits.
+     */
+    static long codedBits(int[] lengths, long[] countArray) {
+        long bits = 0;
+        for (int b = 0; b < lengths.length; b++) bits += countArray[b] * lengths[b];
+        return bits;
+    }
+
+    /**
+     * Checks if a block should be stored raw.
+     *
+     * @param codedBits the bits of the codes of the block.
+     * @param overhead  the bytes that only the coded block has, such as the code lengths or the jump table.
+     * @param length    number of bytes in the block.
+     * @return true if the code saves less than <tt>MIN_SAVING</tt> of the block.
+     */
+    static boolean store(long codedBits, long overhead, long length) {
+        long coded = (codedBits + 7) / 8 + overhead;
+        return coded > length * (1 - MIN_SAVING);
+    }
+}
@@ -0,0 +1,394 @@
+package huffman_coding;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+/**
+ * Table driven decoder for a Huffman code. Instead of walking the trie bit by bit, the next
+ * <tt>primaryBits</tt> bits of the input are used as an index into a lookup table, which gives the
+ * symbol and the length of its code in one step. Codes that are longer than the primary table
+ * continue in second-level (and deeper) tables.
+ * <p>
+ * An entry in the table is either a leaf, <tt>(symbol << 8) | length</tt>, where length is the
+ * number of bits the entry consumes, or a link to a sub table, <tt>-((offset << 5) | subBits)</tt>.
+ *
+ * @author Gustaf Rydholm
+ * @author Addi Djikic
+ *         CELTE13
+ *         DD1332
+ *         2016-02-25
+ */
+class TableDecoder {
+    static final int PRIMARY_BITS = 11;         //Maximum number of bits that indexes the first table.
+    static final int SECONDARY_BITS = 8;        //Maximum number of bits that indexes the sub tables.
+    static final int MAX_CODE_LENGTH = 56;      //The bit buffer must be able to hold the longest code.
+    private static final VarHandle INT = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+
+    private int[] table;                        //All the lookup tables, the primary table comes first.
+    private int tableSize;                      //Number of used entries in the table.
+    private int primaryBits;                    //Number of bits that indexes the primary table.
+    private int maxLength;                      //Length of the longest code.
+    private int singleSymbol = -1;              //The symbol if the code only contains one symbol.
+
+    private final long[] codes;                 //The code of each byte, right aligned.
+    private final int[] lengths;                //The length of the code of each byte, 0 if unused.
+
+    /**
+     * Builds the lookup tables from the code and the code length of each byte.
+     *
+     * @param codes   the code of each byte, right aligned.
+     * @param lengths the code length of each byte, 0 if the byte is not in the code.
+     */
+    TableDecoder(long[] codes, int[] lengths) {
+        this.codes = codes;
+        this.lengths = lengths;
+        int count = 0;
+        int[] members = new int[lengths.length];
+        for (int b = 0; b < lengths.length; b++) {
+            if (lengths[b] > 0) members[count++] = b;
+            if (lengths[b] > maxLength) maxLength = lengths[b];
+        }
+        if (maxLength > MAX_CODE_LENGTH) {
+            throw new IllegalArgumentException("Code length " + maxLength + " is longer than " + MAX_CODE_LENGTH + " bits.");
+        }
+        if (count == 0) return;
+        table = new int[1 << PRIMARY_BITS];
+        primaryBits = Math.min(maxLength, PRIMARY_BITS);
+        buildTable(members, count, 0, primaryBits);
+    }
+
+    /**
+     * Creates a decoder for the codes given by the paths in the Huffman trie.
+     *
+     * @param root the root of the Huffman trie.
+     * @return a decoder for the trie.
+     */
+    static TableDecoder fromTrie(Node root) {
+        long[] codes = new long[256];
+        int[] lengths = new int[256];
+        if (root != null && root.isLeaf()) {
+            //A trie with one leaf has the empty path to it, the decoder only has to repeat the symbol.
+            TableDecoder decoder = new TableDecoder(codes, lengths);
+            decoder.singleSymbol = root.getSymbol();
+            return decoder;
+        }
+        collectCodes(root, 0L, 0, codes, lengths);
+        return new TableDecoder(codes, lengths);
+    }
+
+    /**
+     * Recursive method that collects the path to each leaf in the trie.
+     *
+     * @param node    a node in the Huffman trie.
+     * @param code    the path taken to the node, left is 0 and right is 1.
+     * @param length  the depth of the node.
+     * @param codes   the code of each byte.
+     * @param lengths the code length of each byte.
+     */
+    private static void collectCodes(Node node, long code, int length, long[] codes, int[] lengths) {
+        if (node == null) return;
+        if (node.isLeaf()) {
+            if (length > MAX_CODE_LENGTH) {
+                throw new IllegalArgumentException("Code length " + length + " is longer than " + MAX_CODE_LENGTH + " bits.");
+            }
+            codes[node.getSymbol()] = code;
+            lengths[node.getSymbol()] = length;
+        } else {
+            collectCodes(node.left, code << 1, length + 1, codes, lengths);
+            collectCodes(node.right, (code << 1) | 1, length + 1, codes, lengths);
+        }
+    }
+
+    /**
+     * Builds the table for all codes that share the same prefix of <tt>depth</tt> bits.
+     * Codes that do not fit in the table are grouped by their next bits and put in sub tables.
+     *
+     * @param members the bytes whose codes share the prefix.
+     * @param count   number of bytes in members.
+     * @param depth   the length of the shared prefix.
+     * @param bits    number of bits that indexes the table.
+     * @return the offset of the table.
+     */
+    private int buildTable(int[] members, int count, int depth, int bits) {
+        int base = allocate(1 << bits);
+
+        int[] group = new int[count];
+        boolean[] linked = new boolean[1 << bits];
+        for (int i = 0; i < count; i++) {
+            int b = members[i];
+            int rest = lengths[b] - depth;                 //Number of bits of the code left after the prefix.
+            if (rest <= bits) {
+                int index = (int) (codes[b] & ((1L << rest) - 1)) << (bits - rest);
+                int leaf = (b << 8) | rest;
+                for (int j = 0; j < 1 << (bits - rest); j++) table[base + index + j] = leaf;
+            } else {
+                int prefix = (int) ((codes[b] >>> (rest - bits)) & ((1 << bits) - 1));
+                if (linked[prefix]) continue;
+                linked[prefix] = true;
+
+                //All codes with the same next bits are put in the same sub table.
+                int n = 0;
+                for (int k = i; k < count; k++) {
+                    int r = lengths[members[k]] - depth;
+                    if (r > bits && (int) ((codes[members[k]] >>> (r - bits)) & ((1 << bits) - 1)) == prefix) {
+                        group[n++] = members[k];
+                    }
+                }
+                int[] subMembers = new int[n];
+                System.arraycopy(group, 0, subMembers, 0, n);
+                int subBits = 0;
+                for (int k = 0; k < n; k++) subBits = Math.max(subBits, lengths[subMembers[k]] - depth - bits);
+                subBits = Math.min(subBits, SECONDARY_BITS);
+                int sub = buildTable(subMembers, n, depth + bits, subBits);
+                table[base + prefix] = -((sub << 5) | subBits);
+            }
+        }
+        return base;
+    }
+
+    private int allocate(int size) {
+        if (tableSize + size > table.length) {
+            int[] larger = new int[Math.max(table.length * 2, tableSize + size)];
+            System.arraycopy(table, 0, larger, 0, tableSize);
+            table = larger;
+        }
+        int base = tableSize;
+        tableSize += size;
+        return base;
+    }
+
+    /**
+     * Decodes <tt>count</tt> symbols from the input, starting at the bit <tt>bitPosition</tt>.
+     * The bits are kept in a 64-bit buffer where the next bit is the most significant bit, so each
+     * step emits a whole symbol with one or a few table lookups.
+     *
+     * @param in          the compressed bytes.
+     * @param bitPosition the position of the first bit to decode.
+     * @param end         the index after the last compressed byte in the input.
+     * @param out         the array for the decoded bytes.
+     * @param outPosition the index of the first decoded byte in out.
+     * @param count       number of symbols to decode.
+     * @return the bit position after the last decoded symbol.
+     */
+    long decode(byte[] in, long bitPosition, int end, byte[] out, int outPosition, int count) {
+        if (singleSymbol >= 0 || count == 0) {
+            if (count > 0 && singleSymbol < 0) throw new IllegalStateException("The code is empty.");
+            for (int i = 0; i < count; i++) out[outPosition + i] = (byte) singleSymbol;
+            return bitPosition;
+        }
+        int position = (int) (bitPosition >>> 3);
+        long window = 0;                                   //The next bits, most significant bit first.
+        int bits = 0;                                      //Number of valid bits in the window.
+        long consumed = 0;                                 //Number of bits consumed by the decoded symbols.
+        while (bits <= 56 && position < end) {
+            window |= (in[position++] & 0xffL) << (56 - bits);
+            bits += 8;
+        }
+        int skip = (int) (bitPosition & 7);
+        window <<= skip;
+        bits -= skip;
+
+        int[] table = this.table;
+        int primaryBits = this.primaryBits;
+        int maxLength = this.maxLength;
+        for (int i = 0; i < count; i++) {
+            if (bits < maxLength) {
+                while (bits <= 56 && position < end) {
+                    window |= (in[position++] & 0xffL) << (56 - bits);
+                    bits += 8;
+                }
+            }
+            int entry = table[(int) (window >>> (64 - primaryBits))];
+            int levelBits = primaryBits;
+            while (entry < 0) {
+                window <<= levelBits;
+                bits -= levelBits;
+                consumed += levelBits;
+                levelBits = -entry & 31;
+                entry = table[(-entry >>> 5) + (int) (window >>> (64 - levelBits))];
+            }
+            int length = entry & 0xff;
+            out[outPosition + i] = (byte) (entry >>> 8);
+            window <<= length;
+            bits -= length;
+            consumed += length;
+        }
+        if (bits < 0) throw new IllegalStateException("The compressed input ended before all symbols were decoded.");
+        return bitPosition + consumed;
+    }
+
+    /**
+     * Decodes <tt>count</tt> symbols where the decoder of each symbol is chosen by the symbol before it,
+     * see {@link ContextModel}. The window is the same as in {@link #decode}, only the table changes.
+     *
+     * @param decoders    the decoder of each context.
+     * @param previous    the byte before the first symbol.
+     * @param in          the compressed bytes.
+     * @param bitPosition the position of the first bit to decode.
+     * @param end         the index after the last compressed byte in the input.
+     * @param out         the array for the decoded bytes.
+     * @param outPosition the index of the first decoded byte in out.
+     * @param count       number of symbols to decode.
+     * @return the bit position after the last decoded symbol.
+     */
+    static long decodeContexts(TableDecoder[] decoders, int previous, byte[] in, long bitPosition, int end,
+                               byte[] out, int outPosition, int count) {
+        if (count == 0) return bitPosition;
+        int maxLength = 0;
+        for (TableDecoder decoder : decoders) maxLength = Math.max(maxLength, decoder.maxLength);
+        int position = (int) (bitPosition >>> 3);
+        long window = 0;                                   //The next bits, most significant bit first.
+        int bits = 0;                                      //Number of valid bits in the window.
+        long consumed = 0;                                 //Number of bits consumed by the decoded symbols.
+        while (bits <= 56 && position < end) {
+            window |= (in[position++] & 0xffL) << (56 - bits);
+            bits += 8;
+        }
+        int skip = (int) (bitPosition & 7);
+        window <<= skip;
+        bits -= skip;
+
+        for (int i = 0; i < count; i++) {
+            if (bits < maxLength) {
+                while (bits <= 56 && position < end) {
+                    window |= (in[position++] & 0xffL) << (56 - bits);
+                    bits += 8;
+                }
+            }
+            TableDecoder decoder = decoders[previous];
+            int[] table = decoder.table;
+            if (table == null) throw new IllegalStateException("The code of the context " + previous + " is empty.");
+            int entry = table[(int) (window >>> (64 - decoder.primaryBits))];
+            int levelBits = decoder.primaryBits;
+            while (entry < 0) {
+                window <<= levelBits;
+                bits -= levelBits;
+                consumed += levelBits;
+                levelBits = -entry & 31;
+                entry = table[(-entry >>> 5) + (int) (window >>> (64 - levelBits))];
+            }
+            int length = entry & 0xff;
+            previous = (entry >>> 8) & 0xff;
+            out[outPosition + i] = (byte) previous;
+            window <<= length;
+            bits -= length;
+            consumed += length;
+        }
+        if (bits < 0) throw new IllegalStateException("The compressed input ended before all symbols were decoded.");
+        return bitPosition + consumed;
+    }
+
+    /**
+     * Finds the entry of the next code in the window, following the links to the sub tables.
+     *
+     * @param window the next bits, most significant bit first.
+     * @return the leaf, where the length is the whole length of the code.
+     */
+    private int lookup(long window) {
+        int entry = table[(int) (window >>> (64 - primaryBits))];
+        int levelBits = primaryBits, skipped = 0;
+        while (entry < 0) {
+            window <<= levelBits;
+            skipped += levelBits;
+            levelBits = -entry & 31;
+            entry = table[(-entry >>> 5) + (int) (window >>> (64 - levelBits))];
+        }
+        return entry + skipped;
+    }
+
+    /**
+     * Decodes the first <tt>count</tt> symbols of a block that is split into interleaved streams,
+     * see {@link InterleavedStreams}. Four streams at a time are decoded in the same loop, each with
+     * its own bit buffer, so the lookups of the streams do not wait for each other.
+     *
+     * @param in          the compressed bytes.
+     * @param start       the index of the jump table of the block.
+     * @param end         the index after the last compressed byte of the block.
+     * @param out         the array for the decoded bytes.
+     * @param outPosition the index of the first decoded byte in out.
+     * @param blockLength number of symbols in the block.
+     * @param count       number of symbols to decode from the start of the block.
+     * @param streams     number of streams in the block.
+     */
+    void decodeStreams(byte[] in, int start, int end, byte[] out, int outPosition, int blockLength,
+                       int count, int streams) {
+        int segment = InterleavedStreams.segmentLength(blockLength, streams);
+        int[] starts = new int[streams + 1];
+        starts[0] = start + 4 * (streams - 1);
+        for (int s = 1; s < streams; s++) {
+            int p = start + 4 * (s - 1);
+            int length = (in[p] & 0xff) << 24 | (in[p + 1] & 0xff) << 16 | (in[p + 2] & 0xff) << 8 | (in[p + 3] & 0xff);
+            starts[s] = starts[s - 1] + length;
+            if (length < 0 || starts[s] > end) throw new IllegalStateException("The jump table of the block is damaged.");
+        }
+        starts[streams] = end;
+
+        int s = 0;
+        if (singleSymbol < 0 && count > 0 && maxLength <= 32) {
+            for (; s + 4 <= streams && (s + 3) * segment < count; s += 4) {
+                decodeFour(in, starts, s, out, outPosition + s * segment, segment, count - s * segment);
+            }
+        }
+        for (; s < streams; s++) {
+            int symbols = Math.min(segment, count - s * segment);
+            if (symbols <= 0) break;
+            decode(in, starts[s] * 8L, starts[s + 1], out, outPosition + s * segment, symbols);
+        }
+    }
+
+    /**
+     * Decodes four streams in one loop until the shortest of them is done, then the rest of each
+     * stream is decoded on its own.
+     */
+    private void decodeFour(byte[] in, int[] starts, int first, byte[] out, int outPosition, int segment, int count) {
+        int p0 = starts[first], p1 = starts[first + 1], p2 = starts[first + 2], p3 = starts[first + 3];
+        int e0 = p1, e1 = p2, e2 = p3, e3 = starts[first + 4];
+        int o0 = outPosition, o1 = o0 + segment, o2 = o1 + segment, o3 = o2 + segment;
+        int n3 = Math.min(segment, count - 3 * segment);   //The last stream may be shorter.
+        long w0 = 0, w1 = 0, w2 = 0, w3 = 0;                 //The bit buffers.
+        int b0 = 0, b1 = 0, b2 = 0, b3 = 0;                  //Number of valid bits in each buffer.
+        long c0 = 0, c1 = 0, c2 = 0, c3 = 0;                 //Number of consumed bits of each stream.
+
+        for (int i = 0; i < n3; i++) {
+            //A code is at most 32 bits, so one refill of 32 bits is enough for the next code.
+            if (b0 < 32) {
+                if (p0 + 4 <= e0) { w0 |= ((int) INT.get(in, p0) & 0xffffffffL) << (32 - b0); b0 += 32; p0 += 4; }
+                else while (b0 <= 56 && p0 < e0) { w0 |= (in[p0++] & 0xffL) << (56 - b0); b0 += 8; }
+            }
+            if (b1 < 32) {
+                if (p1 + 4 <= e1) { w1 |= ((int) INT.get(in, p1) & 0xffffffffL) << (32 - b1); b1 += 32; p1 += 4; }
+                else while (b1 <= 56 && p1 < e1) { w1 |= (in[p1++] & 0xffL) << (56 - b1); b1 += 8; }
+            }
+            if (b2 < 32) {
+                if (p2 + 4 <= e2) { w2 |= ((int) INT.get(in, p2) & 0xffffffffL) << (32 - b2); b2 += 32; p2 += 4; }
+                else while (b2 <= 56 && p2 < e2) { w2 |= (in[p2++] & 0xffL) << (56 - b2); b2 += 8; }
+            }
+            if (b3 < 32) {
+                if (p3 + 4 <= e3) { w3 |= ((int) INT.get(in, p3) & 0xffffffffL) << (32 - b3); b3 += 32; p3 += 4; }
+                else while (b3 <= 56 && p3 < e3) { w3 |= (in[p3++] & 0xffL) << (56 - b3); b3 += 8; }
+            }
+            int x0 = lookup(w0), x1 = lookup(w1), x2 = lookup(w2), x3 = lookup(w3);
+            out[o0 + i] = (byte) (x0 >>> 8);
+            out[o1 + i] = (byte) (x1 >>> 8);
+            out[o2 + i] = (byte) (x2 >>> 8);
+            out[o3 + i] = (byte) (x3 >>> 8);
+            int l0 = x0 & 0xff, l1 = x1 & 0xff, l2 = x2 & 0xff, l3 = x3 & 0xff;
+            w0 <<= l0; b0 -= l0; c0 += l0;
+            w1 <<= l1; b1 -= l1; c1 += l1;
+            w2 <<= l2; b2 -= l2; c2 += l2;
+            w3 <<= l3; b3 -= l3; c3 += l3;
+        }
+        if (b0 < 0 || b1 < 0 || b2 < 0 || b3 < 0) {
+            throw new IllegalStateException("The compressed input ended before all symbols were decoded.");
+        }
+
+        //The first three streams have the whole segment left when the last stream is shorter.
+        int rest = segment - n3;
+        if (rest > 0) {
+            decode(in, starts[first] * 8L + c0, e0, out, o0 + n3, rest);
+            decode(in, starts[first + 1] * 8L + c1, e1, out, o1 + n3, rest);
+            decode(in, starts[first + 2] * 8L + c2, e2, out, o2 + n3, rest);
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package huffman_coding;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * A code table that is trained on a sample corpus and shared by many small payloads. The table is
+ * saved with an ID, and a payload compressed with it only has the ID in its header instead of the
+ * code lengths, so the code does not have to be built for each payload. The histogram of a payload is
+ * still counted, so a payload that the table does not make smaller is stored instead.
+ * <p>
+ * Every byte gets a weight of at least 1 in the training, so the table can code bytes that are not
+ * in the samples, only with longer codes.
+ *
+ * @author Gustaf Rydholm
+ * @author Addi Djikic
+ *         CELTE13
+ *         DD1332
+ *         2016-02-25
+ */
+public class TrainedTable {
+    private static final int MAGIC = 0x48554654;        //"HUFT".
+    private static final int VERSION = 1;               //Version of the format of the table file.
+    private static final int maxByte = 256;             //Maximum size of a byte.
+
+    final int id;                                       //The ID that the compressed payloads refer to.
+    final CanonicalCode code;                           //The code of the table.
+    final TableDecoder tableDecoder;                    //Built once and shared by all decodes.
+
+    TrainedTable(int id, CanonicalCode code) {
+        this.id = id;
+        this.code = code;
+        this.tableDecoder = code.tableDecoder();
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * ----------------------------------------------------
+     *
+     *               Methods for training.
+     *
+     * ----------------------------------------------------
+     */
+
+    /**
+     * Trains a table on sample payloads in memory.
+     *
+     * @param id      the ID of the table.
+     * @param samples the sample payloads.
+     * @return the table.
+     */
+    public static TrainedTable train(int id, List<byte[]> samples) {
+        long[] countArray = new long[maxByte];
+        for (byte[] sample : samples) {
+            Histogram.add(countArray, Histogram.count(sample, 0, sample.length));
+        }
+        return fromCounts(id, countArray);
+    }
+
+    /**
+     * Trains a table on sample files, each file is counted with <tt>BitFileReader</tt>.
+     *
+     * @param id    the ID of the table.
+     * @param paths the paths to the sample files.
+     * @return the table.
+     * @throws IOException if a sample could not be read.
+     */
+    public static TrainedTable train(int id, String... paths) throws IOException {
+        long[] countArray = new long[maxByte];
+        for (String path : paths) {
+            BitFileReader bitFileReader = new BitFileReader(path);
+            for (int b = 0; b < maxByte; b++) countArray[b] += bitFileReader.countArray[b];
+        }
+        return fromCounts(id, countArray);
+    }
+
+    private static TrainedTable fromCounts(int id, long[] countArray) {
+        long[] smoothed = new long[maxByte];
+        for (int b = 0; b < maxByte; b++) smoothed[b] = countArray[b] + 1;
+        return new TrainedTable(id, CanonicalCode.fromWeights(BitFileReader.toWeights(smoothed)));
+    }
+
+    /**
+     * ----------------------------------------------------
+     *
+     *               Methods for saving and loading.
+     *
+     * ----------------------------------------------------
+     */
+
+    /**
+     * The file of the table with the ID in the directory.
+     *
+     * @param directory the directory of the tables.
+     * @param id        the ID of the table.
+     * @return the file.
+     */
+    static File file(File directory, int id) {
+        return new File(directory, id + ".table");
+    }
+
+    /**
+     * Saves the table in the directory, the file is named by the ID.
+     *
+     * @param directory the directory of the tables.
+     * @throws IOException if the file could not be written.
+     */
+    public void save(File directory) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(file(directory, id))))) {
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            out.writeInt(id);
+            code.write(out);
+        }
+    }
+
+    /**
+     * Loads the table with the ID from the directory.
+     *
+     * @param directory the directory of the tables.
+     * @param id        the ID of the table.
+     * @return the table.
+     * @throws IOException if the table could not be read.
+     */
+    public static TrainedTable load(File directory, int id) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(file(directory, id))))) {
+            if (in.readInt() != MAGIC) throw new IOException("The file is not a code table.");
+            int version = in.readUnsignedByte();
+            if (version != VERSION) throw new IOException("Unknown version " + version + " of the code table.");
+            int storedId = in.readInt();
+            if (storedId != id) throw new IOException("The file of table " + id + " contains table " + storedId + ".");
+            return new TrainedTable(id, CanonicalCode.read(in));
+        }
+    }
+
+    /**
+     * Gives the header of a file that refers to a shared table the code of that table.
+     *
+     * @param header    the header of the compressed file.
+     * @param directory the directory of the tables, may be null if the file has its own code.
+     * @throws IOException if the table could not be loaded.
+     */
+    static void resolve(CompressedHeader header, File directory) throws IOException {
+        if (!header.hasSharedTable()) return;
+        if (directory == null) {
+            throw new IOException("The file is compressed with the shared table " + header.tableId
+                    + ", give the directory of the tables.");
+        }
+        header.code = load(directory, header.tableId).code;
+    }
+}